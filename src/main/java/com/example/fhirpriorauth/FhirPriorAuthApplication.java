@@ -2,13 +2,24 @@ package com.example.fhirpriorauth;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 @EnableScheduling
 public class FhirPriorAuthApplication {
 
+	// Default idle timeout, in seconds, of pooled connections of the JDK HTTP client used for Availity
+	private static final String DEFAULT_KEEP_ALIVE_TIMEOUT_SECONDS = "300";
+
 	public static void main(String[] args) {
+		// The JDK HTTP client reads its idle connection timeout once, when its connection pool class is first
+		// loaded, so it must be set before anything creates an HttpClient. Override it with the JVM option
+		// -Djdk.httpclient.keepalive.timeout=<seconds>.
+		if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+			System.setProperty("jdk.httpclient.keepalive.timeout", DEFAULT_KEEP_ALIVE_TIMEOUT_SECONDS);
+		}
 		SpringApplication.run(FhirPriorAuthApplication.class, args);
 	}
 
@@ -0,0 +1,71 @@
+package com.example.fhirpriorauth.auth;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Additional Availity submitter accounts, configured as
+ * <pre>
+ * availity.accounts.&lt;name&gt;.client-id=...
+ * availity.accounts.&lt;name&gt;.client-secret=...
+ * availity.accounts.&lt;name&gt;.scope=hipaa
+ * availity.accounts.&lt;name&gt;.payers=BCBSF,99999
+ * </pre>
+ * Payers not listed under any account use the default availity.client-id credentials.
+ */
+@ConfigurationProperties(prefix = "availity")
+public class AvailityAccountProperties {
+
+    private Map<String, Account> accounts = new LinkedHashMap<>();
+
+    public Map<String, Account> getAccounts() {
+        return accounts;
+    }
+
+    public void setAccounts(Map<String, Account> accounts) {
+        this.accounts = accounts;
+    }
+
+    public static class Account {
+        private String clientId;
+        private String clientSecret;
+        private String scope = "hipaa";
+        private List<String> payers = new ArrayList<>();
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        public void setClientId(String clientId) {
+            this.clientId = clientId;
+        }
+
+        public String getClientSecret() {
+            return clientSecret;
+        }
+
+        public void setClientSecret(String clientSecret) {
+            this.clientSecret = clientSecret;
+        }
+
+        public String getScope() {
+            return scope;
+        }
+
+        public void setScope(String scope) {
+            this.scope = scope;
+        }
+
+        public List<String> getPayers() {
+            return payers;
+        }
+
+        public void setPayers(List<String> payers) {
+            this.payers = payers;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.fhirpriorauth.auth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves which Availity credentials to use for a request
+ */
+@Component
+public class AvailityAccounts {
+
+    private static final Logger log = LoggerFactory.getLogger(AvailityAccounts.class);
+
+    private final AvailityCredentials defaultCredentials;
+    private final Map<String, AvailityCredentials> accountsByName = new HashMap<>();
+    private final Map<String, AvailityCredentials> accountsByPayer = new HashMap<>();
+
+    @Autowired
+    public AvailityAccounts(@Value("${availity.client-id}") String clientId,
+                            @Value("${availity.client-secret}") String clientSecret,
+                            @Value("${availity.oauth.scope}") String scope,
+                            AvailityAccountProperties properties) {
+        this.defaultCredentials = new AvailityCredentials(clientId, clientSecret, scope);
+
+        properties.getAccounts().forEach((name, account) -> {
+            if (account.getClientId() == null || account.getClientSecret() == null) {
+                log.warn("Skipping Availity account '{}': client-id and client-secret are required", name);
+                return;
+            }
+            AvailityCredentials credentials =
+                    new AvailityCredentials(account.getClientId(), account.getClientSecret(), account.getScope());
+            accountsByName.put(name, credentials);
+            for (String payerId : account.getPayers()) {
+                accountsByPayer.put(payerId.trim(), credentials);
+            }
+            log.info("Registered Availity account '{}' for payers {}", name, account.getPayers());
+        });
+    }
+
+    /**
+     * Get the default credentials (availity.client-id / availity.client-secret)
+     */
+    public AvailityCredentials getDefault() {
+        return defaultCredentials;
+    }
+
+    /**
+     * Get the credentials of a named account, or the default credentials if there is no such account
+     *
+     * @param name The account name
+     * @return The credentials to use
+     */
+    public AvailityCredentials forAccount(String name) {
+        return name == null ? defaultCredentials : accountsByName.getOrDefault(name, defaultCredentials);
+    }
+
+    /**
+     * Get the credentials to use when submitting to a payer
+     *
+     * @param payerId The payer ID, as produced by FhirToAvailityMapper
+     * @return The credentials to use
+     */
+    public AvailityCredentials forPayer(String payerId) {
+        return payerId == null ? defaultCredentials : accountsByPayer.getOrDefault(payerId, defaultCredentials);
+    }
+}
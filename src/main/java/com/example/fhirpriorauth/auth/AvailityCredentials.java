@@ -0,0 +1,56 @@
+package com.example.fhirpriorauth.auth;
+
+import java.util.Objects;
+
+/**
+ * OAuth client credentials for one Availity submitter account.
+ *
+ * Two credentials are equal when they share a client ID and scope, which is also the key
+ * the {@link TokenService} caches tokens under.
+ */
+public final class AvailityCredentials {
+
+    private final String clientId;
+    private final String clientSecret;
+    private final String scope;
+
+    public AvailityCredentials(String clientId, String clientSecret, String scope) {
+        this.clientId = Objects.requireNonNull(clientId, "clientId");
+        this.clientSecret = Objects.requireNonNull(clientSecret, "clientSecret");
+        this.scope = Objects.requireNonNull(scope, "scope");
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public String getClientSecret() {
+        return clientSecret;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AvailityCredentials)) {
+            return false;
+        }
+        AvailityCredentials that = (AvailityCredentials) o;
+        return clientId.equals(that.clientId) && scope.equals(that.scope);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(clientId, scope);
+    }
+
+    @Override
+    public String toString() {
+        return clientId + " (" + scope + ")";
+    }
+}
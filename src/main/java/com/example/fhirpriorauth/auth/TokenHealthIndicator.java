@@ -0,0 +1,27 @@
+package com.example.fhirpriorauth.auth;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Readiness indicator that stays DOWN until a valid Availity access token is cached,
+ * so traffic is only routed to an instance that can call Availity without waiting on OAuth
+ */
+@Component("availityTokenHealthIndicator")
+public class TokenHealthIndicator implements HealthIndicator {
+
+    private final TokenService tokenService;
+
+    public TokenHealthIndicator(TokenService tokenService) {
+        this.tokenService = tokenService;
+    }
+
+    @Override
+    public Health health() {
+        if (tokenService.hasValidToken()) {
+            return Health.up().build();
+        }
+        return Health.down().withDetail("reason", "No valid Availity access token cached yet").build();
+    }
+}
@@ -1,17 +1,41 @@
 package com.example.fhirpriorauth.auth;
 
+import com.example.fhirpriorauth.config.HttpClientMetrics;
+import com.example.fhirpriorauth.resilience.UpstreamGuard;
+import com.example.fhirpriorauth.resilience.UpstreamGuards;
+import com.example.fhirpriorauth.resilience.UpstreamUnavailableException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import java.net.URI;
 import java.net.http.*;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class TokenService {
@@ -21,56 +45,498 @@ public class TokenService {
     @Value("${availity.oauth.token-url}")
     private String tokenUrl;
 
-    @Value("${availity.client-id}")
-    private String clientId;
+    @Value("${availity.http.request-timeout-ms:30000}")
+    private long requestTimeoutMillis;
 
-    @Value("${availity.client-secret}")
-    private String clientSecret;
+    // Maximum number of (client, scope) pairs to keep tokens for; the least recently used is evicted
+    @Value("${availity.oauth.token-pool.max-size:32}")
+    private int maxPoolSize;
 
-    @Value("${availity.oauth.scope}")
-    private String scope;
+    // Refresh-ahead: renew the token in the background before it expires
+    @Value("${availity.oauth.refresh-ahead.enabled:true}")
+    private boolean refreshAheadEnabled;
+
+    // Fraction of the token lifetime (expires_in) after which the background refresh runs
+    @Value("${availity.oauth.refresh-ahead.fraction:0.75}")
+    private double refreshAheadFraction;
+
+    // Random spread applied to the refresh time, as a fraction of the refresh delay
+    @Value("${availity.oauth.refresh-ahead.jitter:0.1}")
+    private double refreshAheadJitter;
+
+    @Value("${availity.oauth.refresh-ahead.retry-initial-delay-ms:1000}")
+    private long retryInitialDelayMillis;
+
+    @Value("${availity.oauth.refresh-ahead.retry-max-delay-ms:30000}")
+    private long retryMaxDelayMillis;
+
+    // Fetch a token for the default account as soon as the application is ready
+    @Value("${availity.oauth.prefetch-on-startup:true}")
+    private boolean prefetchOnStartup;
 
     private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpClient httpClient;
+    private final HttpClientMetrics httpClientMetrics;
+    private final UpstreamGuard tokenGuard;
+    private final AvailityAccounts accounts;
+    private final MeterRegistry meterRegistry;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
 
-    // Token cache
-    private String cachedToken = null;
-    private Instant tokenExpiration = null;
+    // Token pool: one slot per (client ID, scope), each with its own snapshot, refresh and schedule
+    private final Map<AvailityCredentials, TokenSlot> tokenPool = new ConcurrentHashMap<>();
 
     // Buffer time before token expiration (in seconds)
     private static final int TOKEN_EXPIRY_BUFFER = 60; // 1 minute buffer
+
+    // Background refresh timer shared by all slots
+    private final ScheduledExecutorService refreshScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public TokenService(HttpClient availityHttpClient, HttpClientMetrics httpClientMetrics, AvailityAccounts accounts,
+                        MeterRegistry meterRegistry, UpstreamGuards upstreamGuards) {
+        this.httpClient = availityHttpClient;
+        this.tokenGuard = upstreamGuards.forUpstream(UpstreamGuards.TOKEN);
+        this.httpClientMetrics = httpClientMetrics;
+        this.accounts = accounts;
+        this.meterRegistry = meterRegistry;
+        this.cacheHits = Counter.builder("availity.token.cache")
+                .description("Token lookups served from the cache (hit) or that had to wait for a refresh (miss)")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.cacheMisses = Counter.builder("availity.token.cache")
+                .description("Token lookups served from the cache (hit) or that had to wait for a refresh (miss)")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
     /**
-     * Fetch an access token from Availity
+     * Prefetch a token for the default account once the application is ready,
+     * so the first real request after a deploy does not pay for the OAuth round-trip
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void prefetchToken() {
+        if (!prefetchOnStartup) {
+            return;
+        }
+        try {
+            refreshScheduler.execute(() -> {
+                log.info("Prefetching Availity access token on startup");
+                if (fetchAccessToken() == null) {
+                    log.warn("Startup token prefetch failed; the first request will fetch a token inline");
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("Token refresh scheduler is shut down; skipping prefetch");
+        }
+    }
+
+    /**
+     * Check whether a valid token is cached for the default account
+     *
+     * @return true if a token exists that has not expired
+     */
+    public boolean hasValidToken() {
+        TokenSlot slot = tokenPool.get(accounts.getDefault());
+        CachedToken current = slot != null ? slot.cachedToken.get() : null;
+        return current != null && current.isValid();
+    }
+
+    /**
+     * Fetch an access token from Availity using the default credentials
      *
      * @return The access token, or null if the token could not be obtained
      */
     public String fetchAccessToken() {
+        return fetchAccessToken(accounts.getDefault());
+    }
+
+    /**
+     * Fetch an access token for the account that submits to the given payer
+     *
+     * @param payerId The payer ID
+     * @return The access token, or null if the token could not be obtained
+     */
+    public String fetchAccessTokenForPayer(String payerId) {
+        return fetchAccessToken(accounts.forPayer(payerId));
+    }
+
+    /**
+     * Fetch an access token from Availity
+     *
+     * @param credentials The client credentials to fetch the token for
+     * @return The access token, or null if the token could not be obtained
+     */
+    public String fetchAccessToken(AvailityCredentials credentials) {
+        TokenSlot slot = slotFor(credentials);
+
         // Check if we have a cached token that's still valid
-        if (cachedToken != null && tokenExpiration != null && Instant.now().isBefore(tokenExpiration)) {
-            log.info("Using cached access token (expires in {} seconds)",
-                    java.time.Duration.between(Instant.now(), tokenExpiration).getSeconds());
-            return cachedToken;
+        CachedToken current = slot.cachedToken.get();
+        if (current != null && current.isValid()) {
+            cacheHits.increment();
+            log.info("Using cached access token for {} (expires in {} seconds)", credentials,
+                    Duration.between(Instant.now(), current.expiresAt).getSeconds());
+            return current.token;
         }
 
+        cacheMisses.increment();
+        CachedToken refreshed = await(refreshToken(slot, false));
+        return refreshed != null ? refreshed.token : null;
+    }
+
+    /**
+     * Fetch an access token for the account that submits to the given payer without blocking the calling thread
+     *
+     * @param payerId The payer ID
+     * @return A future completed with the access token, or with null if the token could not be obtained
+     */
+    public CompletableFuture<String> fetchAccessTokenForPayerAsync(String payerId) {
+        return fetchAccessTokenAsync(accounts.forPayer(payerId));
+    }
+
+    /**
+     * Fetch an access token from Availity without blocking the calling thread.
+     * A valid cached token is returned as a completed future; otherwise the caller joins the
+     * in-flight refresh, or a new one is started on the token refresh thread.
+     *
+     * @param credentials The client credentials to fetch the token for
+     * @return A future completed with the access token, or with null if the token could not be obtained
+     */
+    public CompletableFuture<String> fetchAccessTokenAsync(AvailityCredentials credentials) {
+        TokenSlot slot = slotFor(credentials);
+
+        CachedToken current = slot.cachedToken.get();
+        if (current != null && current.isValid()) {
+            cacheHits.increment();
+            return CompletableFuture.completedFuture(current.token);
+        }
+
+        cacheMisses.increment();
+        CompletableFuture<CachedToken> refresh = slot.inFlightRefresh.get();
+        if (refresh == null) {
+            try {
+                refresh = CompletableFuture.supplyAsync(() -> refreshToken(slot, false), refreshScheduler)
+                        .thenCompose(future -> future);
+            } catch (RejectedExecutionException e) {
+                // Shutting down; fetch on the caller's thread instead
+                refresh = refreshToken(slot, false);
+            }
+        }
+        return refresh.thenApply(refreshed -> refreshed != null ? refreshed.token : null);
+    }
+
+    /**
+     * Check whether the token endpoint rejected the credentials of the account that submits to the given payer
+     * (or they are not configured) on the last attempt, so a failed fetch will not succeed by trying again
+     *
+     * @param payerId The payer ID
+     * @return true if the last token request for the account failed because of its credentials
+     */
+    public boolean credentialsRejectedForPayer(String payerId) {
+        TokenSlot slot = tokenPool.get(accounts.forPayer(payerId));
+        return slot != null && slot.credentialsRejected;
+    }
+
+    /**
+     * Drop a token that Availity rejected (e.g. with a 401) so the next fetch refreshes it.
+     * The cached token is only cleared if it is still the rejected one, so many concurrent 401s
+     * for the same token cause a single refresh, and a token that was already replaced is kept.
+     *
+     * @param credentials The credentials the token was issued for
+     * @param rejectedToken The token that was rejected
+     */
+    public void invalidate(AvailityCredentials credentials, String rejectedToken) {
+        TokenSlot slot = tokenPool.get(credentials);
+        if (slot == null || rejectedToken == null) {
+            return;
+        }
+
+        CachedToken current = slot.cachedToken.get();
+        if (current != null && current.token.equals(rejectedToken) && slot.cachedToken.compareAndSet(current, null)) {
+            log.warn("Access token for {} was rejected by Availity; invalidated cached token", credentials);
+        }
+    }
+
+    /**
+     * Drop a rejected token of the account that submits to the given payer
+     *
+     * @param payerId The payer ID
+     * @param rejectedToken The token that was rejected
+     */
+    public void invalidateForPayer(String payerId, String rejectedToken) {
+        invalidate(accounts.forPayer(payerId), rejectedToken);
+    }
+
+    /**
+     * Get the pool slot for a set of credentials, creating it (and evicting the least recently used slot) if needed
+     */
+    private TokenSlot slotFor(AvailityCredentials credentials) {
+        TokenSlot slot = tokenPool.get(credentials);
+        if (slot == null) {
+            slot = tokenPool.computeIfAbsent(credentials, this::createSlot);
+            slot.lastAccessNanos = System.nanoTime();
+            evictIfNeeded(slot);
+        }
+        slot.lastAccessNanos = System.nanoTime();
+        return slot;
+    }
+
+    /**
+     * Create a pool slot and register its time-to-expiry gauge
+     */
+    private TokenSlot createSlot(AvailityCredentials credentials) {
+        TokenSlot slot = new TokenSlot(credentials);
+        slot.expiryGauge = Gauge.builder("availity.token.time-to-expiry", slot, TokenService::secondsUntilExpiry)
+                .description("Seconds until the cached token stops being served")
+                .baseUnit("seconds")
+                .tag("client", credentials.getClientId())
+                .tag("scope", credentials.getScope())
+                .register(meterRegistry);
+        return slot;
+    }
+
+    private static double secondsUntilExpiry(TokenSlot slot) {
+        CachedToken current = slot.cachedToken.get();
+        return current == null ? 0 : Math.max(0, Duration.between(Instant.now(), current.expiresAt).toMillis() / 1000.0);
+    }
+
+    /**
+     * Evict least recently used slots until the pool is within its bound
+     *
+     * @param keep The slot that was just added and must not be evicted
+     */
+    private void evictIfNeeded(TokenSlot keep) {
+        while (tokenPool.size() > maxPoolSize) {
+            TokenSlot eldest = null;
+            for (TokenSlot candidate : tokenPool.values()) {
+                if (candidate != keep && (eldest == null || candidate.lastAccessNanos - eldest.lastAccessNanos < 0)) {
+                    eldest = candidate;
+                }
+            }
+            if (eldest == null || !tokenPool.remove(eldest.credentials, eldest)) {
+                return;
+            }
+            ScheduledFuture<?> scheduled = eldest.scheduledRefresh.getAndSet(null);
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+            if (eldest.expiryGauge != null) {
+                meterRegistry.remove(eldest.expiryGauge);
+            }
+            log.info("Evicted cached token for {} from the token pool", eldest.credentials);
+        }
+    }
+
+    /**
+     * Refresh the token, making sure only one request to the token endpoint is in flight at a time per slot.
+     * The thread that installs the future performs the fetch; every other caller waits on the same future.
+     *
+     * @param slot The pool slot to refresh
+     * @param force Whether to fetch a new token even if the cached one is still valid
+     * @return A future completed with the new token, or with null if the token could not be obtained;
+     *         completed exceptionally if the refresh itself failed unexpectedly
+     */
+    private CompletableFuture<CachedToken> refreshToken(TokenSlot slot, boolean force) {
+        while (true) {
+            CompletableFuture<CachedToken> existing = slot.inFlightRefresh.get();
+            if (existing != null) {
+                return existing;
+            }
+
+            CompletableFuture<CachedToken> mine = new CompletableFuture<>();
+            if (!slot.inFlightRefresh.compareAndSet(null, mine)) {
+                continue;
+            }
+
+            try {
+                // Another thread may have finished a refresh between our cache check and winning the slot
+                CachedToken current = slot.cachedToken.get();
+                boolean reuse = !force && current != null && current.isValid();
+                CachedToken result = reuse ? current : timedRequestNewToken(slot.credentials, force);
+                if (result != null && result != current) {
+                    slot.cachedToken.set(result);
+                    scheduleRefreshAhead(slot, result);
+                }
+                mine.complete(result);
+            } catch (Throwable t) {
+                // Every waiter sees the failure instead of a null that looks like a rejected token request
+                log.warn("Token refresh for {} failed unexpectedly", slot.credentials, t);
+                mine.completeExceptionally(t);
+            } finally {
+                slot.inFlightRefresh.compareAndSet(mine, null);
+            }
+            return mine;
+        }
+    }
+
+    /**
+     * Schedule a background refresh at the configured fraction of the token lifetime, with jitter,
+     * so callers keep using the current token and never wait on the token endpoint in steady state.
+     *
+     * @param slot The pool slot the token belongs to
+     * @param token The token that was just cached
+     */
+    private void scheduleRefreshAhead(TokenSlot slot, CachedToken token) {
+        if (!refreshAheadEnabled || refreshScheduler.isShutdown() || tokenPool.get(slot.credentials) != slot) {
+            return;
+        }
+
+        long lifetimeMillis = token.lifetimeSeconds * 1000L;
+        double jitter = refreshAheadJitter > 0
+                ? ThreadLocalRandom.current().nextDouble(-refreshAheadJitter, refreshAheadJitter)
+                : 0;
+        long delayMillis = (long) (lifetimeMillis * refreshAheadFraction * (1 + jitter));
+
+        // Never schedule past the point where the cached token stops being served
+        long untilExpiry = Duration.between(Instant.now(), token.expiresAt).toMillis();
+        delayMillis = Math.max(0, Math.min(delayMillis, untilExpiry));
+
+        log.debug("Scheduling refresh-ahead for {} in {} ms", slot.credentials, delayMillis);
+        schedule(slot, () -> refreshAhead(slot, 0), delayMillis);
+    }
+
+    /**
+     * Refresh the token in the background, retrying with exponential backoff while the current token is still valid
+     *
+     * @param slot The pool slot to refresh
+     * @param attempt The number of failed attempts so far
+     */
+    private void refreshAhead(TokenSlot slot, int attempt) {
+        if (tokenPool.get(slot.credentials) != slot) {
+            return; // Evicted
+        }
+
+        CachedToken refreshed;
+        try {
+            refreshed = await(refreshToken(slot, true));
+        } catch (RuntimeException e) {
+            // Logged by refreshToken; retried like any other failed refresh
+            refreshed = null;
+        }
+        if (refreshed != null) {
+            return;
+        }
+
+        CachedToken current = slot.cachedToken.get();
+        if (current == null || !current.isValid()) {
+            // Nothing left to protect; the next caller refreshes inline
+            log.warn("Refresh-ahead failed for {} and the cached token has expired; falling back to inline refresh",
+                    slot.credentials);
+            return;
+        }
+
+        long backoff = Math.min(retryMaxDelayMillis, retryInitialDelayMillis << Math.min(attempt, 20));
+        long delayMillis = ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+        log.warn("Refresh-ahead attempt {} failed for {}, retrying in {} ms", attempt + 1, slot.credentials, delayMillis);
+        schedule(slot, () -> refreshAhead(slot, attempt + 1), delayMillis);
+    }
+
+    /**
+     * Wait for a refresh, rethrowing an unexpected failure as it was thrown rather than wrapped
+     */
+    private static CachedToken await(CompletableFuture<CachedToken> refresh) {
+        try {
+            return refresh.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Replace the scheduled refresh task of a slot with a new one
+     */
+    private void schedule(TokenSlot slot, Runnable task, long delayMillis) {
+        try {
+            ScheduledFuture<?> next = refreshScheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+            ScheduledFuture<?> previous = slot.scheduledRefresh.getAndSet(next);
+            if (previous != null && previous != next) {
+                previous.cancel(false);
+            }
+        } catch (RejectedExecutionException e) {
+            log.debug("Token refresh scheduler is shut down; skipping refresh-ahead");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshScheduler.shutdownNow();
+    }
+
+    /**
+     * Request a new token and record the refresh latency and outcome
+     *
+     * @param credentials The client credentials to authenticate with
+     * @param background Whether this is a refresh-ahead (true) or a caller waiting inline (false)
+     * @return The new token, or null if the token could not be obtained
+     */
+    private CachedToken timedRequestNewToken(AvailityCredentials credentials, boolean background) {
+        long start = System.nanoTime();
+        CachedToken result = requestNewToken(credentials);
+        Timer.builder("availity.token.refresh")
+                .description("Time spent fetching a token from the Availity token endpoint")
+                .tag("mode", background ? "background" : "inline")
+                .tag("outcome", result != null ? "success" : "failure")
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    /**
+     * Request a new token from the Availity token endpoint
+     *
+     * @param credentials The client credentials to authenticate with
+     * @return The new token, or null if the token could not be obtained
+     */
+    private CachedToken requestNewToken(AvailityCredentials credentials) {
+        if (credentials.getClientId().isBlank() || credentials.getClientSecret().isBlank()) {
+            log.error("AUTHENTICATION ERROR: No client ID or secret configured for {}", credentials);
+            markCredentialsRejected(credentials, true);
+            return null;
+        }
+        markCredentialsRejected(credentials, false);
         try {
             log.info("Fetching new access token from Availity");
             log.debug("Token URL: {}", tokenUrl);
-            log.debug("Client ID: {}", clientId);
-            log.debug("Scope: {}", scope);
+            log.debug("Client ID: {}", credentials.getClientId());
+            log.debug("Scope: {}", credentials.getScope());
 
             String requestBody = "grant_type=client_credentials"
-                    + "&client_id=" + URLEncoder.encode(clientId, StandardCharsets.UTF_8)
-                    + "&client_secret=" + URLEncoder.encode(clientSecret, StandardCharsets.UTF_8)
-                    + "&scope=" + URLEncoder.encode(scope, StandardCharsets.UTF_8);
+                    + "&client_id=" + URLEncoder.encode(credentials.getClientId(), StandardCharsets.UTF_8)
+                    + "&client_secret=" + URLEncoder.encode(credentials.getClientSecret(), StandardCharsets.UTF_8)
+                    + "&scope=" + URLEncoder.encode(credentials.getScope(), StandardCharsets.UTF_8);
 
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(URI.create(tokenUrl))
                     .header("Content-Type", "application/x-www-form-urlencoded")
+                    .timeout(Duration.ofMillis(requestTimeoutMillis))
                     .POST(HttpRequest.BodyPublishers.ofString(requestBody))
                     .build();
 
             log.debug("Sending request to token endpoint");
-            HttpResponse<String> response = HttpClient.newHttpClient()
-                    .send(request, HttpResponse.BodyHandlers.ofString());
+            UpstreamGuard.Permit permit = tokenGuard.acquire();
+            HttpResponse<String> response;
+            try {
+                response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            } catch (Exception e) {
+                permit.onFailure();
+                throw e;
+            }
+            if (response.statusCode() >= 500) {
+                permit.onFailure();
+            } else {
+                permit.onSuccess();
+            }
+            httpClientMetrics.record("token", response);
 
             log.debug("Received response with status code: {}", response.statusCode());
 
@@ -79,6 +545,9 @@ public class TokenService {
                 log.error("Status code: {}", response.statusCode());
                 log.error("Response: {}", response.body());
                 log.error("URL: {}", tokenUrl);
+                // invalid_client / unauthorized_client: the same credentials will be refused again
+                int status = response.statusCode();
+                markCredentialsRejected(credentials, status == 400 || status == 401 || status == 403);
                 return null;
             }
 
@@ -94,16 +563,22 @@ public class TokenService {
             int expiresIn = node.has("expires_in") ? node.get("expires_in").asInt() : 300;
 
             // Cache the token with expiration time (minus buffer)
-            cachedToken = token;
-            tokenExpiration = Instant.now().plusSeconds(expiresIn - TOKEN_EXPIRY_BUFFER);
+            CachedToken cached = new CachedToken(token, expiresIn, Instant.now().plusSeconds(expiresIn - TOKEN_EXPIRY_BUFFER));
 
             log.info("AUTHENTICATION SUCCESS: Successfully obtained token from Availity");
             log.debug("Token: {}...{}", token.substring(0, 5), token.substring(token.length() - 5));
             log.debug("Expires in: {} seconds", expiresIn);
-            log.debug("Cached until: {}", tokenExpiration);
+            log.debug("Cached until: {}", cached.expiresAt);
 
-            return token;
+            return cached;
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("AUTHENTICATION ERROR: Interrupted while fetching token", e);
+            return null;
+        } catch (UpstreamUnavailableException e) {
+            log.warn("AUTHENTICATION ERROR: Token endpoint not called: {}", e.getMessage());
+            return null;
         } catch (Exception e) {
             log.error("AUTHENTICATION ERROR: Exception while fetching token", e);
             log.error("Error: {}", e.getMessage());
@@ -111,4 +586,60 @@ public class TokenService {
             return null;
         }
     }
+
+    /**
+     * Token state for one (client ID, scope) pair
+     */
+    /**
+     * Remember whether the last token request for a set of credentials failed because of the credentials
+     */
+    private void markCredentialsRejected(AvailityCredentials credentials, boolean rejected) {
+        TokenSlot slot = tokenPool.get(credentials);
+        if (slot != null) {
+            slot.credentialsRejected = rejected;
+        }
+    }
+
+    private static final class TokenSlot {
+        private final AvailityCredentials credentials;
+
+        // One immutable snapshot so the token and its expiry are always read together
+        private final AtomicReference<CachedToken> cachedToken = new AtomicReference<>();
+
+        // Refresh currently in progress, shared by every caller that finds the cache empty or expired
+        private final AtomicReference<CompletableFuture<CachedToken>> inFlightRefresh = new AtomicReference<>();
+
+        // The currently scheduled refresh-ahead task
+        private final AtomicReference<ScheduledFuture<?>> scheduledRefresh = new AtomicReference<>();
+
+        private volatile long lastAccessNanos;
+
+        // Whether the last token request failed because the credentials are missing or were refused
+        private volatile boolean credentialsRejected;
+
+        private Gauge expiryGauge;
+
+        private TokenSlot(AvailityCredentials credentials) {
+            this.credentials = credentials;
+        }
+    }
+
+    /**
+     * Immutable token snapshot
+     */
+    private static final class CachedToken {
+        private final String token;
+        private final long lifetimeSeconds;
+        private final Instant expiresAt;
+
+        private CachedToken(String token, long lifetimeSeconds, Instant expiresAt) {
+            this.token = token;
+            this.lifetimeSeconds = lifetimeSeconds;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isValid() {
+            return Instant.now().isBefore(expiresAt);
+        }
+    }
 }
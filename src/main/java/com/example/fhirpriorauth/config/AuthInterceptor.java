@@ -4,25 +4,106 @@ import ca.uhn.fhir.rest.client.api.IClientInterceptor;
 import ca.uhn.fhir.rest.client.api.IHttpRequest;
 import ca.uhn.fhir.rest.client.api.IHttpResponse;
 import com.example.fhirpriorauth.auth.TokenService;
+import com.example.fhirpriorauth.resilience.AvailityRateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.Map;
+
 @Component
 public class AuthInterceptor implements IClientInterceptor {
 
+    private static final Logger log = LoggerFactory.getLogger(AuthInterceptor.class);
+
+    /**
+     * Request header callers can set (e.g. with withAdditionalHeader) to pick the Availity account by payer.
+     * It is consumed here and never sent upstream.
+     */
+    public static final String PAYER_HEADER = "X-Availity-Payer-Id";
+
     private final TokenService tokenService;
+    private final AvailityRateLimiter rateLimiter;
+
+    // Payer and token of the request in progress; HAPI calls interceptRequest and interceptResponse on the same thread
+    private final ThreadLocal<String[]> currentAuth = new ThreadLocal<>();
 
-    public AuthInterceptor(TokenService tokenService) {
+    // Payer and token obtained by authorize for the next request on this thread
+    private final ThreadLocal<String[]> preparedAuth = new ThreadLocal<>();
+
+    public AuthInterceptor(TokenService tokenService, AvailityRateLimiter rateLimiter) {
         this.tokenService = tokenService;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Wait for the payer's rate limit and fetch its access token for the next request made on this thread.
+     * Callers that time their requests (such as the FHIR upstream guard) do this first, so neither wait is
+     * counted as the server's latency. The next request uses this payer and token instead of doing both inline.
+     *
+     * @param endpoint The endpoint class of the request, AvailityRateLimiter.SUBMIT or STATUS
+     * @param payerId The payer the request is for, or null for calls not tied to a payer
+     */
+    public void authorize(String endpoint, String payerId) {
+        rateLimiter.acquireBlocking(endpoint, payerId);
+        preparedAuth.set(new String[] {payerId, tokenService.fetchAccessTokenForPayer(payerId)});
+    }
+
+    /**
+     * Forget a payer and token from authorize that no request used (e.g. the call was rejected before it was sent)
+     */
+    public void clearAuthorization() {
+        preparedAuth.remove();
     }
 
     @Override
     public void interceptRequest(IHttpRequest request) {
-        String token = tokenService.fetchAccessToken();
+        String payerId = findHeader(request, PAYER_HEADER);
+        if (payerId != null) {
+            request.removeHeaders(PAYER_HEADER);
+        }
+
+        String[] prepared = preparedAuth.get();
+        preparedAuth.remove();
+        String token;
+        if (prepared != null) {
+            payerId = prepared[0];
+            token = prepared[1];
+        } else {
+            // HAPI's client is synchronous, so wait here for the payer's rate limit
+            String endpoint = "GET".equalsIgnoreCase(request.getHttpVerbName())
+                    ? AvailityRateLimiter.STATUS : AvailityRateLimiter.SUBMIT;
+            rateLimiter.acquireBlocking(endpoint, payerId);
+            token = tokenService.fetchAccessTokenForPayer(payerId);
+        }
+
         request.addHeader("Authorization", "Bearer " + token);
+        currentAuth.set(new String[] {payerId, token});
     }
 
     @Override
     public void interceptResponse(IHttpResponse response) {
-        // Optional: handle or log the response if needed
+        String[] auth = currentAuth.get();
+        currentAuth.remove();
+
+        // Drop a token Availity rejected so the caller's single replay (see PriorAuthService) gets a fresh one
+        if (response.getStatus() == 401 && auth != null) {
+            log.warn("FHIR request was rejected with 401; invalidating the cached access token");
+            tokenService.invalidateForPayer(auth[0], auth[1]);
+        }
+    }
+
+    private String findHeader(IHttpRequest request, String name) {
+        Map<String, List<String>> headers = request.getAllHeaders();
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
     }
-} 
+}
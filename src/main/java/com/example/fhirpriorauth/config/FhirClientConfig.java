@@ -6,6 +6,8 @@ import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.client.api.IHttpRequest;
 import ca.uhn.fhir.rest.client.api.IHttpResponse;
 import ca.uhn.fhir.rest.client.interceptor.LoggingInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -13,9 +15,20 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class FhirClientConfig {
 
+    private static final Logger log = LoggerFactory.getLogger(FhirClientConfig.class);
+
     @Value("${fhir.base-url}")
     private String fhirBaseUrl;
 
+    @Value("${fhir.client.log-bodies:false}")
+    private boolean logBodies;
+
+    @Value("${availity.http.connect-timeout-ms:5000}")
+    private int connectTimeoutMillis;
+
+    @Value("${availity.http.request-timeout-ms:30000}")
+    private int requestTimeoutMillis;
+
     private final AuthInterceptor authInterceptor;
 
     public FhirClientConfig(AuthInterceptor authInterceptor) {
@@ -27,7 +40,12 @@ public class FhirClientConfig {
      */
     @Bean
     public FhirContext fhirContext() {
-        return FhirContext.forR4();
+        FhirContext context = FhirContext.forR4();
+
+        // HAPI keeps its own pooled Apache client; align its timeouts with the shared Availity HTTP client
+        context.getRestfulClientFactory().setConnectTimeout(connectTimeoutMillis);
+        context.getRestfulClientFactory().setSocketTimeout(requestTimeoutMillis);
+        return context;
     }
 
     /**
@@ -36,7 +54,7 @@ public class FhirClientConfig {
     @Bean
     public IGenericClient fhirClient(FhirContext fhirContext) {
         // Log the FHIR base URL
-        System.out.println("Configuring FHIR client with base URL: " + fhirBaseUrl);
+        log.info("Configuring FHIR client with base URL: {}", fhirBaseUrl);
 
         // Create a client using the context
         IGenericClient client = fhirContext.newRestfulGenericClient(fhirBaseUrl);
@@ -44,13 +62,16 @@ public class FhirClientConfig {
         // Register the auth interceptor
         client.registerInterceptor(authInterceptor);
 
-        // Add a logging interceptor to log requests and responses
-        LoggingInterceptor loggingInterceptor = new LoggingInterceptor();
-        loggingInterceptor.setLogRequestBody(true);
-        loggingInterceptor.setLogResponseBody(true);
-        loggingInterceptor.setLogRequestHeaders(true);
-        loggingInterceptor.setLogResponseHeaders(true);
-        client.registerInterceptor(loggingInterceptor);
+        // Log request and response bodies only when asked to: they hold patient data. Headers are never logged,
+        // as the request headers carry the bearer token.
+        if (logBodies) {
+            LoggingInterceptor loggingInterceptor = new LoggingInterceptor();
+            loggingInterceptor.setLogRequestBody(true);
+            loggingInterceptor.setLogResponseBody(true);
+            loggingInterceptor.setLogRequestHeaders(false);
+            loggingInterceptor.setLogResponseHeaders(false);
+            client.registerInterceptor(loggingInterceptor);
+        }
 
         // Add a custom interceptor to add required headers for Availity
         client.registerInterceptor(new IClientInterceptor() {
@@ -1,5 +1,7 @@
 package com.example.fhirpriorauth.config;
 
+import com.example.fhirpriorauth.resilience.RateLimitExceededException;
+import com.example.fhirpriorauth.resilience.UpstreamUnavailableException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -21,6 +23,24 @@ public class GlobalExceptionHandler {
                 .body("Error - " + ex.getMessage());
     }
     
+    /**
+     * Handle calls turned away by the Availity rate limiter
+     */
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<String> handleRateLimited(RateLimitExceededException ex) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .body("Error - " + ex.getMessage());
+    }
+
+    /**
+     * Handle calls not sent because the upstream's circuit breaker is open or its concurrency limit is reached
+     */
+    @ExceptionHandler(UpstreamUnavailableException.class)
+    public ResponseEntity<String> handleUpstreamUnavailable(UpstreamUnavailableException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body("Error - " + ex.getMessage());
+    }
+
     /**
      * Handle 404 errors
      */
@@ -0,0 +1,62 @@
+package com.example.fhirpriorauth.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Configuration for the shared HTTP client used for all Availity traffic
+ */
+@Configuration
+public class HttpClientConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpClientConfig.class);
+
+    @Value("${availity.http.connect-timeout-ms:5000}")
+    private long connectTimeoutMillis;
+
+    @Value("${availity.http.executor-threads:8}")
+    private int executorThreads;
+
+    /**
+     * Executor used by the HTTP client for async sends and response processing
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService availityHttpExecutor(MeterRegistry meterRegistry) {
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(executorThreads, r -> {
+            Thread thread = new Thread(r, "availity-http-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return ExecutorServiceMetrics.monitor(meterRegistry, executor, "availity.http.executor");
+    }
+
+    /**
+     * Create one pooled HTTP/2 client so connections and TLS sessions are reused across requests
+     */
+    @Bean
+    public HttpClient availityHttpClient(ExecutorService availityHttpExecutor) {
+        // The idle connection timeout is the jdk.httpclient.keepalive.timeout JVM option (see FhirPriorAuthApplication)
+        log.info("Creating shared Availity HTTP client (HTTP/2, connect timeout {} ms, {} executor threads, keep-alive {} s)",
+                connectTimeoutMillis, executorThreads,
+                System.getProperty("jdk.httpclient.keepalive.timeout", "1200 (JDK default)"));
+
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(availityHttpExecutor)
+                .build();
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.fhirpriorauth.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import javax.net.ssl.SSLSession;
+import java.net.http.HttpResponse;
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records connection reuse for the shared Availity HTTP client.
+ *
+ * The JDK client does not expose its connection pool, so reuse is measured from the responses:
+ * the negotiated protocol version, and whether the TLS session was new (a full handshake) or
+ * one already seen on an earlier response (a reused connection or resumed session).
+ */
+@Component
+public class HttpClientMetrics {
+
+    // Upper bound on remembered TLS session IDs; the set is reset when it fills up
+    private static final int MAX_TRACKED_SESSIONS = 1024;
+
+    private final MeterRegistry meterRegistry;
+    private final Set<String> seenSessions = ConcurrentHashMap.newKeySet();
+    private final Counter newSessions;
+    private final Counter reusedSessions;
+
+    public HttpClientMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.newSessions = Counter.builder("availity.http.tls.sessions")
+                .description("Responses received on a new or a reused TLS session")
+                .tag("result", "new")
+                .register(meterRegistry);
+        this.reusedSessions = Counter.builder("availity.http.tls.sessions")
+                .description("Responses received on a new or a reused TLS session")
+                .tag("result", "reused")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Record a response received from an Availity endpoint
+     *
+     * @param target The logical endpoint, e.g. "token" or "service-reviews"
+     * @param response The response
+     */
+    public void record(String target, HttpResponse<?> response) {
+        meterRegistry.counter("availity.http.requests",
+                "target", target,
+                "version", response.version().name(),
+                "status", String.valueOf(response.statusCode())).increment();
+
+        response.sslSession().ifPresent(this::recordSession);
+    }
+
+    private void recordSession(SSLSession session) {
+        byte[] id = session.getId();
+        if (id == null || id.length == 0) {
+            return;
+        }
+
+        if (seenSessions.size() >= MAX_TRACKED_SESSIONS) {
+            seenSessions.clear();
+        }
+
+        if (seenSessions.add(Base64.getEncoder().encodeToString(id))) {
+            newSessions.increment();
+        } else {
+            reusedSessions.increment();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.fhirpriorauth.controller;
+
+import com.example.fhirpriorauth.service.BatchSubmissionService;
+import com.example.fhirpriorauth.util.ClaimBatchReader;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+/**
+ * Controller for submitting batches of prior authorization requests.
+ *
+ * Accepts a JSON array or an NDJSON stream of FHIR Claims and streams one NDJSON result line
+ * back per claim as soon as its submission completes.
+ */
+@RestController
+@RequestMapping("/prior-auth/batch")
+public class BatchSubmitController {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchSubmitController.class);
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final BatchSubmissionService batchSubmissionService;
+
+    @Value("${availity.batch.timeout-ms:600000}")
+    private long batchTimeoutMillis;
+
+    @Autowired
+    public BatchSubmitController(BatchSubmissionService batchSubmissionService) {
+        this.batchSubmissionService = batchSubmissionService;
+    }
+
+    /**
+     * Submit a batch of FHIR Claims
+     */
+    @PostMapping(consumes = {"application/x-ndjson", MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<ResponseBodyEmitter> submitBatch(HttpServletRequest request,
+                                                           @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType) {
+        Iterator<String> claims;
+        try {
+            claims = contentType.startsWith("application/x-ndjson")
+                    ? ClaimBatchReader.ndjson(request.getInputStream())
+                    : ClaimBatchReader.jsonArray(request.getInputStream());
+        } catch (IOException | UncheckedIOException e) {
+            log.error("Error reading batch submission", e);
+            ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+            try {
+                emitter.send("{\"status\":\"error\",\"error\":\"Request body is not a JSON array or NDJSON stream of Claims\"}\n", NDJSON);
+            } catch (IOException ignored) {
+                // Nothing more to report
+            }
+            emitter.complete();
+            return ResponseEntity.badRequest().contentType(NDJSON).body(emitter);
+        }
+
+        log.info("Submitting batch of prior authorization requests ({})", contentType);
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(batchTimeoutMillis);
+        batchSubmissionService.submitBatch(claims, result -> {
+            try {
+                emitter.send(result.toString() + "\n", NDJSON);
+            } catch (IOException e) {
+                // The client went away; the service stops submitting the rest of the batch
+                throw new UncheckedIOException(e);
+            }
+        }).whenComplete((ignored, error) -> {
+            if (error != null) {
+                emitter.completeWithError(error);
+            } else {
+                emitter.complete();
+            }
+        });
+
+        return ResponseEntity.ok().contentType(NDJSON).body(emitter);
+    }
+}
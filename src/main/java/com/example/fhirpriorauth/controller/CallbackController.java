@@ -0,0 +1,74 @@
+package com.example.fhirpriorauth.controller;
+
+import com.example.fhirpriorauth.service.StatusCallbackService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Controller receiving service review status notifications pushed by Availity (or the local callback simulator)
+ */
+@RestController
+@RequestMapping("/prior-auth/callbacks")
+public class CallbackController {
+
+    private static final Logger log = LoggerFactory.getLogger(CallbackController.class);
+
+    private final StatusCallbackService statusCallbackService;
+
+    @Autowired
+    public CallbackController(StatusCallbackService statusCallbackService) {
+        this.statusCallbackService = statusCallbackService;
+    }
+
+    /**
+     * Receive a status notification for a service review. The body is read raw, so the signature is checked
+     * over exactly the bytes that were signed.
+     *
+     * @param id The ID of the service review
+     * @param timestamp The epoch seconds the notification was signed at
+     * @param signature The "sha256=<hex>" HMAC of the notification
+     * @param body The service review JSON
+     * @return 202 with the mapped status once applied; 401 if the signature does not verify; 400 for a body that
+     *         is not a service review status; 409 for a replayed or out-of-order notification, or "In Process"
+     *         after a final status; 503 if no shared secret is configured
+     */
+    @PostMapping("/service-reviews/{id}")
+    public ResponseEntity<Map<String, Object>> receiveStatus(
+            @PathVariable String id,
+            @RequestHeader(value = StatusCallbackService.TIMESTAMP_HEADER, required = false) String timestamp,
+            @RequestHeader(value = StatusCallbackService.SIGNATURE_HEADER, required = false) String signature,
+            @RequestBody byte[] body) {
+        if (!statusCallbackService.isConfigured()) {
+            log.warn("Rejected status notification for service review {}: no callback secret configured", id);
+            return ResponseEntity.status(503).body(Map.of("error", "Status notifications are not configured"));
+        }
+        if (!statusCallbackService.verify(id, timestamp, signature, body)) {
+            return ResponseEntity.status(401).body(Map.of("error", "Invalid or expired signature"));
+        }
+
+        try {
+            String status = statusCallbackService.apply(id, timestamp, signature, body);
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("id", id);
+            response.put("status", status);
+            return ResponseEntity.accepted().body(response);
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected status notification for service review {}: {}", id, e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            log.warn("Ignored status notification for service review {}: {}", id, e.getMessage());
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -1,7 +1,12 @@
 package com.example.fhirpriorauth.controller;
 
 import com.example.fhirpriorauth.model.ApiCall;
+import com.example.fhirpriorauth.model.QueuedSubmission;
+import com.example.fhirpriorauth.queue.SubmissionQueue;
+import com.example.fhirpriorauth.resilience.UpstreamErrors;
 import com.example.fhirpriorauth.service.ApiTrackerService;
+import com.example.fhirpriorauth.service.AvailityServiceReviewService;
+import com.example.fhirpriorauth.service.IdempotencyCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,7 +16,7 @@ import org.springframework.web.bind.annotation.*;
 import jakarta.servlet.http.HttpServletRequest;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Controller for handling external API calls
@@ -21,42 +26,160 @@ public class ExternalApiController {
     private static final Logger log = LoggerFactory.getLogger(ExternalApiController.class);
 
     private final ApiTrackerService apiTrackerService;
+    private final AvailityServiceReviewService availityServiceReviewService;
+    private final SubmissionQueue submissionQueue;
+    private final IdempotencyCache idempotencyCache;
 
     @Autowired
-    public ExternalApiController(ApiTrackerService apiTrackerService) {
+    public ExternalApiController(ApiTrackerService apiTrackerService,
+                                 AvailityServiceReviewService availityServiceReviewService,
+                                 SubmissionQueue submissionQueue, IdempotencyCache idempotencyCache) {
         this.apiTrackerService = apiTrackerService;
+        this.availityServiceReviewService = availityServiceReviewService;
+        this.submissionQueue = submissionQueue;
+        this.idempotencyCache = idempotencyCache;
     }
 
     /**
-     * Handle external submit requests
+     * Handle external submit requests.
+     * The request is answered with 202 Accepted once it is in the durable submission queue, so it survives a
+     * restart; the resource ID (or error) is recorded on the tracked API call when Availity answers.
+     * Retries carrying the same Idempotency-Key (or, without a key, the same payload) are not queued again:
+     * they are answered with the original request ID, and once Availity accepted it, its resource ID.
      *
      * @param payload The request payload
+     * @param idempotencyKey The client's idempotency key, if any
      * @param request The HTTP request
-     * @return A response with the request ID
+     * @return A response with the request ID and queue sequence number
      */
     @PostMapping("/submit")
-    public ResponseEntity<?> handleSubmit(@RequestBody Map<String, Object> payload, HttpServletRequest request) {
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> handleSubmit(
+            @RequestBody Map<String, Object> payload,
+            @RequestHeader(value = SubmitController.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            HttpServletRequest request) {
         String clientIp = getClientIp(request);
         log.info("Received submit request from {}", clientIp);
 
-        // Track the API call
-        ApiCall apiCall = apiTrackerService.trackApiCall("/submit", "POST", clientIp, payload);
+        IdempotencyCache.Claim claim = idempotencyCache.claim(
+                availityServiceReviewService.idempotencyKeyOf(payload, idempotencyKey));
+        if (claim.isDuplicate()) {
+            return claim.getRequestId().handle((originalRequestId, error) -> duplicateResponse(originalRequestId,
+                    claim.getResult(), error));
+        }
 
-        // Process the request (in a real scenario, this would call the actual service)
+        // Track the API call
+        ApiCall apiCall;
+        try {
+            apiCall = apiTrackerService.trackApiCall("/submit", "POST", clientIp, payload);
+        } catch (RuntimeException e) {
+            idempotencyCache.track(claim, CompletableFuture.failedFuture(e));
+            throw e;
+        }
         String requestId = apiCall.getRequestId();
-        String resourceId = "RES-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        claim.getRequestId().complete(requestId);
+
+        if (apiCall.getAvailityPayload() == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("requestId", requestId);
+            response.put("status", "Error");
+            response.put("message", "Request payload could not be converted to an Availity service review");
+            apiTrackerService.updateApiCall(requestId, "Error", response);
+            idempotencyCache.track(claim, CompletableFuture.failedFuture(
+                    new IllegalArgumentException((String) response.get("message"))));
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
+        }
 
-        // Create response
+        // Acknowledge once the submission is durably queued; the queue sends it to Availity and the outcome is recorded
+        SubmissionQueue.Receipt receipt = submissionQueue.enqueue(
+                QueuedSubmission.forPayload(requestId, apiCall.getAvailityPayload(), idempotencyKey),
+                apiCall::setRetryCount);
+        idempotencyCache.track(claim, receipt.getOutcome());
+
+        return receipt.getLogged()
+                .thenApply(sequence -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("requestId", requestId);
+                    response.put("queueSequence", sequence);
+                    response.put("status", "Queued");
+                    response.put("message", "Prior authorization request queued for submission");
+
+                    apiTrackerService.updateApiCall(requestId, "Queued", response);
+                    // Registered only now, so the outcome always replaces "Queued" rather than racing it
+                    recordOutcome(requestId, apiCall, receipt.getOutcome());
+                    return ResponseEntity.accepted().body(response);
+                })
+                .exceptionally(e -> {
+                    Throwable cause = UpstreamErrors.unwrap(e);
+                    log.error("Error queueing prior authorization request {}", requestId, cause);
+
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("requestId", requestId);
+                    response.put("status", "Error");
+                    response.put("message", cause.getMessage());
+
+                    apiTrackerService.updateApiCall(requestId, "Error", response);
+                    return ResponseEntity.status(UpstreamErrors.httpStatusFor(cause)).body(response);
+                });
+    }
+
+    /**
+     * Answer a retry of a submission with the original request: its resource ID once Availity accepted it,
+     * otherwise that it is still queued
+     *
+     * @param requestId The ID of the original request, or null if it failed
+     * @param result The future of the original submission
+     * @param error Why the original request failed, if it did
+     * @return The response
+     */
+    private ResponseEntity<Map<String, Object>> duplicateResponse(String requestId, CompletableFuture<String> result,
+                                                                  Throwable error) {
         Map<String, Object> response = new HashMap<>();
         response.put("requestId", requestId);
-        response.put("resourceId", resourceId);
-        response.put("status", "Success");
-        response.put("message", "Prior authorization request submitted successfully");
-
-        // Update the API call with the response
-        apiTrackerService.updateApiCall(requestId, "Success", response);
+        if (error != null || result.isCompletedExceptionally()) {
+            Throwable cause = UpstreamErrors.unwrap(error != null ? error : result.handle((id, e) -> e).join());
+            response.put("status", "Error");
+            response.put("message", cause.getMessage());
+            return ResponseEntity.status(UpstreamErrors.httpStatusFor(cause)).body(response);
+        }
+        String resourceId = result.getNow(null);
+        if (resourceId != null) {
+            String location = availityServiceReviewService.getServiceReviewLocation(resourceId);
+            response.put("resourceId", resourceId);
+            response.put("location", location);
+            response.put("status", "Success");
+            response.put("message", "Prior authorization request already submitted");
+            return ResponseEntity.ok().header("Location", location).body(response);
+        }
+        response.put("status", "Queued");
+        response.put("message", "Prior authorization request already queued for submission");
+        return ResponseEntity.accepted().body(response);
+    }
 
-        return ResponseEntity.ok(response);
+    /**
+     * Record the outcome of a queued submission in the API tracker once it is known
+     *
+     * @param requestId The ID of the tracked API call
+     * @param apiCall The tracked API call
+     * @param outcome The future completed with the service review ID, or the failure
+     */
+    private void recordOutcome(String requestId, ApiCall apiCall, CompletableFuture<String> outcome) {
+        outcome.whenComplete((resourceId, error) -> {
+            Map<String, Object> response = new HashMap<>();
+            response.put("requestId", requestId);
+            response.put("retryCount", apiCall.getRetryCount());
+            if (error == null) {
+                response.put("resourceId", resourceId);
+                response.put("location", availityServiceReviewService.getServiceReviewLocation(resourceId));
+                response.put("status", "Success");
+                response.put("message", "Prior authorization request submitted successfully");
+                apiTrackerService.updateApiCall(requestId, "Success", response);
+            } else {
+                Throwable cause = UpstreamErrors.unwrap(error);
+                response.put("status", "Error");
+                response.put("message", cause.getMessage());
+                apiTrackerService.updateApiCall(requestId, "Error", response);
+            }
+        });
     }
 
     /**
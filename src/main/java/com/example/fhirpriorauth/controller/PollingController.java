@@ -1,18 +1,28 @@
 package com.example.fhirpriorauth.controller;
 
+import com.example.fhirpriorauth.model.PollingStatus;
 import com.example.fhirpriorauth.service.AvailityPollingService;
+import com.example.fhirpriorauth.service.StatusStreamService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.time.LocalDateTime;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -23,37 +33,78 @@ import java.util.Map;
 public class PollingController {
 
     private static final Logger log = LoggerFactory.getLogger(PollingController.class);
-    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+    // Largest page the list endpoint returns
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    // Most reviews one status stream can watch
+    private static final int MAX_STREAM_IDS = 100;
 
     private final AvailityPollingService availityPollingService;
+    private final StatusStreamService statusStreamService;
 
     @Autowired
-    public PollingController(AvailityPollingService availityPollingService) {
+    public PollingController(AvailityPollingService availityPollingService, StatusStreamService statusStreamService) {
         this.availityPollingService = availityPollingService;
+        this.statusStreamService = statusStreamService;
     }
 
     /**
-     * Get the status of all prior auths being polled
+     * Get the status of the prior auths being polled, a page at a time in the order polling started.
+     * Pass the returned "next" cursor as "after" to get the following page.
      */
     @GetMapping
-    public ResponseEntity<?> getAllPollingStatuses() {
+    public ResponseEntity<?> getAllPollingStatuses(@RequestParam(defaultValue = "0") long after,
+                                                   @RequestParam(defaultValue = "100") int limit) {
         try {
             log.info("Getting all polling statuses");
-            
-            // Create a map to hold the statuses
-            Map<String, Object> statuses = new HashMap<>();
-            
-            // In the current implementation, we don't have a way to get all prior auth statuses
-            // So we'll just return an empty map
-            
-            return ResponseEntity.ok(statuses);
+
+            List<PollingStatus> page = availityPollingService.list(after, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+            List<Map<String, Object>> statuses = new ArrayList<>(page.size());
+            for (PollingStatus status : page) {
+                statuses.add(toStatusInfo(status));
+            }
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("total", availityPollingService.size());
+            response.put("statuses", statuses);
+            response.put("next", page.isEmpty() ? null : page.get(page.size() - 1).getSequence());
+            return ResponseEntity.ok(response);
         } catch (Exception e) {
             log.error("Error getting all polling statuses", e);
             return ResponseEntity.status(500)
                     .body(Map.of("error", "Error getting all polling statuses: " + e.getMessage()));
         }
     }
-    
+
+    /**
+     * Stream status changes of prior auths as Server-Sent Events ("status" events with JSON data), polling any
+     * that are not being polled yet. Browsers reconnect with the Last-Event-ID header and only get what changed.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamStatuses(@RequestParam List<String> ids,
+                                                     @RequestParam(defaultValue = "false") boolean mock,
+                                                     @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        List<String> reviewIds = ids.stream().map(String::trim).filter(id -> !id.isEmpty()).distinct().toList();
+        if (reviewIds.isEmpty() || reviewIds.size() > MAX_STREAM_IDS) {
+            log.warn("Rejected status stream for {} prior auth IDs (1 to {} allowed)", reviewIds.size(), MAX_STREAM_IDS);
+            return ResponseEntity.badRequest().build();
+        }
+        long resumeAfter = 0;
+        if (lastEventId != null) {
+            try {
+                resumeAfter = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException e) {
+                // Not one of ours: send everything
+            }
+        }
+
+        log.info("Streaming status of {} prior auth IDs", reviewIds.size());
+        return ResponseEntity.ok(statusStreamService.subscribe(reviewIds, resumeAfter, mock));
+    }
+
     /**
      * Get the status of a specific prior auth being polled
      */
@@ -61,26 +112,20 @@ public class PollingController {
     public ResponseEntity<?> getPollingStatus(@PathVariable String id) {
         try {
             log.info("Getting polling status for prior auth ID: {}", id);
-            
-            // In the current implementation, we don't have a way to get the status of a specific prior auth
-            // So we'll just return a placeholder status
-            
-            // Convert to a map of status information
-            Map<String, Object> statusInfo = new HashMap<>();
-            statusInfo.put("id", id);
-            statusInfo.put("status", "0");
-            statusInfo.put("statusDescription", getStatusDescription("0"));
-            statusInfo.put("lastPolled", LocalDateTime.now().format(DATE_TIME_FORMATTER));
-            statusInfo.put("pollingAttempts", 1);
-            
-            return ResponseEntity.ok(statusInfo);
+
+            PollingStatus status = availityPollingService.getStatus(id);
+            if (status == null) {
+                return ResponseEntity.status(404)
+                        .body(Map.of("error", "Prior auth ID is not being polled: " + id));
+            }
+            return ResponseEntity.ok(toStatusInfo(status));
         } catch (Exception e) {
             log.error("Error getting polling status for prior auth ID: {}", id, e);
             return ResponseEntity.status(500)
                     .body(Map.of("error", "Error getting polling status: " + e.getMessage()));
         }
     }
-    
+
     /**
      * Start polling for a specific prior auth
      */
@@ -88,21 +133,44 @@ public class PollingController {
     public ResponseEntity<?> startPolling(@PathVariable String id) {
         try {
             log.info("Starting polling for prior auth ID: {}", id);
-            
-            // Start polling for the prior auth ID
-            availityPollingService.pollStatus(id, "dummy-token");
-            
-            return ResponseEntity.ok(Map.of(
-                    "message", "Started polling for prior auth ID: " + id,
-                    "status", "Polling started"
-            ));
+
+            // Start polling for the prior auth ID (joins the polling already in progress, if any)
+            PollingStatus status = availityPollingService.startPolling(id);
+
+            Map<String, Object> response = toStatusInfo(status);
+            response.put("message", "Started polling for prior auth ID: " + id);
+            return ResponseEntity.ok(response);
         } catch (Exception e) {
             log.error("Error starting polling for prior auth ID: {}", id, e);
             return ResponseEntity.status(500)
                     .body(Map.of("error", "Error starting polling: " + e.getMessage()));
         }
     }
-    
+
+    /**
+     * Convert a polling status to the map of status information returned to the UI
+     */
+    private Map<String, Object> toStatusInfo(PollingStatus status) {
+        Map<String, Object> statusInfo = new HashMap<>();
+        statusInfo.put("id", status.getId());
+        statusInfo.put("status", status.getStatus());
+        if (status.getStatus() != null) {
+            statusInfo.put("statusDescription", getStatusDescription(status.getStatus()));
+        } else {
+            statusInfo.put("statusDescription", status.isCompleted() ? "Polling failed" : "Polling started");
+        }
+        statusInfo.put("lastPolled", format(status.getLastPolled()));
+        statusInfo.put("nextPoll", format(status.getNextPoll()));
+        statusInfo.put("pollingAttempts", status.getAttempts());
+        statusInfo.put("completed", status.isCompleted());
+        statusInfo.put("error", status.getError());
+        return statusInfo;
+    }
+
+    private static String format(Instant instant) {
+        return instant != null ? DATE_TIME_FORMATTER.format(instant) : null;
+    }
+
     /**
      * Get a description for a status code
      */
@@ -1,5 +1,6 @@
 package com.example.fhirpriorauth.controller;
 
+import com.example.fhirpriorauth.resilience.UpstreamErrors;
 import com.example.fhirpriorauth.service.PriorAuthService;
 import org.hl7.fhir.r4.model.Claim;
 import org.hl7.fhir.r4.model.ClaimResponse;
@@ -36,7 +37,7 @@ public class PriorAuthController {
 
             return ResponseEntity.ok("Success. Prior Auth ID: " + resourceId);
         } catch (Exception e) {
-            return ResponseEntity.status(500).body("Error - " + e.getMessage());
+            return ResponseEntity.status(UpstreamErrors.httpStatusFor(e)).body("Error - " + e.getMessage());
         }
     }
 
@@ -51,7 +52,7 @@ public class PriorAuthController {
             String status = response.getOutcome() != null ? response.getOutcome().getDisplay() : "PENDING";
             return ResponseEntity.ok("Prior Auth Status: " + status + ", ID: " + claimId);
         } catch (Exception e) {
-            return ResponseEntity.status(500).body("Error - " + e.getMessage());
+            return ResponseEntity.status(UpstreamErrors.httpStatusFor(e)).body("Error - " + e.getMessage());
         }
     }
 
@@ -65,7 +66,7 @@ public class PriorAuthController {
                 return ResponseEntity.status(500).body("Error - Failed to cancel prior auth");
             }
         } catch (Exception e) {
-            return ResponseEntity.status(500).body("Error - " + e.getMessage());
+            return ResponseEntity.status(UpstreamErrors.httpStatusFor(e)).body("Error - " + e.getMessage());
         }
     }
 
@@ -83,7 +84,7 @@ public class PriorAuthController {
             }
             return ResponseEntity.ok("Success. Connected to Availity. Test ID: " + id);
         } catch (Exception e) {
-            return ResponseEntity.status(500).body("Error - " + e.getMessage());
+            return ResponseEntity.status(UpstreamErrors.httpStatusFor(e)).body("Error - " + e.getMessage());
         }
     }
 
@@ -1,5 +1,9 @@
 package com.example.fhirpriorauth.controller;
 
+import com.example.fhirpriorauth.model.QueuedSubmission;
+import com.example.fhirpriorauth.polling.StatusPoller;
+import com.example.fhirpriorauth.queue.SubmissionQueue;
+import com.example.fhirpriorauth.resilience.UpstreamErrors;
 import com.example.fhirpriorauth.service.AvailityServiceReviewService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,9 +12,13 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Controller for submitting prior authorization requests
  */
@@ -20,112 +28,125 @@ public class SubmitController {
 
     private static final Logger log = LoggerFactory.getLogger(SubmitController.class);
 
+    // Clients send the same key when retrying a submission so it is only sent to Availity once
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    // How long the poll endpoint waits for a final status, within spring.mvc.async.request-timeout
+    private static final long POLL_WAIT_SECONDS = 50;
+
     private final AvailityServiceReviewService availityServiceReviewService;
+    private final SubmissionQueue submissionQueue;
+    private final StatusPoller statusPoller;
 
     @Autowired
-    public SubmitController(AvailityServiceReviewService availityServiceReviewService) {
+    public SubmitController(AvailityServiceReviewService availityServiceReviewService, SubmissionQueue submissionQueue,
+                            StatusPoller statusPoller) {
         this.availityServiceReviewService = availityServiceReviewService;
+        this.submissionQueue = submissionQueue;
+        this.statusPoller = statusPoller;
     }
 
     /**
-     * Submit a test prior authorization request
+     * Submit a test prior authorization request.
+     * The servlet thread is released while the request to Availity is in flight.
      */
     @GetMapping
-    public ResponseEntity<String> submitTestPriorAuth() {
-        try {
-            // Submit the service review using mock data
-            log.info("Submitting test prior authorization request to Availity using mock data");
-            String id = availityServiceReviewService.submitServiceReview(true); // Use mock data
-
-            return ResponseEntity.ok("Submission Successful\n" +
-                    "Successfully submitted prior authorization request to Availity.\n\n" +
-                    "Resource ID: " + id);
-        } catch (Exception e) {
-            log.error("Error submitting test prior authorization request", e);
-            return ResponseEntity.status(500)
-                    .body("Error - " + e.getMessage());
-        }
+    public CompletableFuture<ResponseEntity<String>> submitTestPriorAuth(
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        // Submit the service review using mock data
+        log.info("Submitting test prior authorization request to Availity using mock data");
+        return submitTestPriorAuthAsync(idempotencyKey);
     }
 
     /**
      * Submit a test prior authorization request (POST method)
      */
     @PostMapping
-    public ResponseEntity<String> submitTestPriorAuthPost() {
-        try {
-            // Submit the service review using mock data
-            log.info("Submitting test prior authorization request to Availity using mock data (POST)");
-            String id = availityServiceReviewService.submitServiceReview(true); // Use mock data
-
-            return ResponseEntity.ok("Submission Successful\n" +
-                    "Successfully submitted prior authorization request to Availity.\n\n" +
-                    "Resource ID: " + id);
-        } catch (Exception e) {
-            log.error("Error submitting test prior authorization request", e);
-            return ResponseEntity.status(500)
-                    .body("Error - " + e.getMessage());
-        }
+    public CompletableFuture<ResponseEntity<String>> submitTestPriorAuthPost(
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        // Submit the service review using mock data
+        log.info("Submitting test prior authorization request to Availity using mock data (POST)");
+        return submitTestPriorAuthAsync(idempotencyKey);
+    }
+
+    /**
+     * Queue the test request durably (so it is not lost if the JVM restarts) and answer once Availity accepts it.
+     * If a delivery fails transiently the answer is the error, while the queue keeps redelivering the request.
+     */
+    private CompletableFuture<ResponseEntity<String>> submitTestPriorAuthAsync(String idempotencyKey) {
+        return submissionQueue.enqueue(QueuedSubmission.forTestRequest(true, idempotencyKey)) // Use mock data
+                .getSubmitted()
+                .thenApply(id -> ResponseEntity.ok("Submission Successful\n" +
+                        "Successfully submitted prior authorization request to Availity.\n\n" +
+                        "Resource ID: " + id))
+                .exceptionally(e -> errorResponse("Error submitting test prior authorization request", e));
     }
 
     /**
      * Check the status of a prior authorization request
      */
     @GetMapping("/{id}")
-    public ResponseEntity<String> checkStatus(@PathVariable String id) {
-        try {
-            // Check the status
-            log.info("Checking status of prior authorization request: {}", id);
-            String status = availityServiceReviewService.checkServiceReviewStatus(id);
-
-            return ResponseEntity.ok("Status Check\n" +
-                    "Prior authorization status: " + getStatusDescription(status) + "\n" +
-                    "Resource ID: " + id);
-        } catch (Exception e) {
-            log.error("Error checking status of prior authorization request", e);
-            return ResponseEntity.status(500)
-                    .body("Error - " + e.getMessage());
-        }
+    public CompletableFuture<ResponseEntity<String>> checkStatus(@PathVariable String id) {
+        // Check the status
+        log.info("Checking status of prior authorization request: {}", id);
+        return availityServiceReviewService.checkServiceReviewStatusAsync(id)
+                .thenApply(status -> ResponseEntity.ok("Status Check\n" +
+                        "Prior authorization status: " + getStatusDescription(status) + "\n" +
+                        "Resource ID: " + id))
+                .exceptionally(e -> errorResponse("Error checking status of prior authorization request", e));
     }
 
     /**
-     * Poll for the status of a prior authorization request
+     * Poll for the status of a prior authorization request.
+     * The review is polled in the background; the servlet thread is released while waiting for the final status.
+     * If it is not final within POLL_WAIT_SECONDS the answer is "Polling timeout", and polling carries on.
      */
     @GetMapping("/{id}/poll")
-    public ResponseEntity<String> pollStatus(@PathVariable String id) {
+    public CompletableFuture<ResponseEntity<String>> pollStatus(@PathVariable String id) {
+        // Poll for the status (with mock scenario)
+        log.info("Polling for status of prior authorization request: {}", id);
+        CompletableFuture<String> finalStatus;
         try {
-            // Poll for the status
-            log.info("Polling for status of prior authorization request: {}", id);
-            String status = availityServiceReviewService.pollServiceReviewStatus(id, 10, 2000);
-
-            return ResponseEntity.ok("Prior authorization final status: " + getStatusDescription(status) +
-                    "\nResource ID: " + id);
-        } catch (Exception e) {
-            log.error("Error polling for status of prior authorization request", e);
-            return ResponseEntity.status(500)
-                    .body("Error - " + e.getMessage());
+            finalStatus = statusPoller.register(id, 10, 2000, true).getResult();
+        } catch (RuntimeException e) {
+            finalStatus = CompletableFuture.failedFuture(e);
         }
+        return finalStatus
+                .thenApply(status -> ResponseEntity.ok("Prior authorization final status: " +
+                        getStatusDescription(status) + "\nResource ID: " + id))
+                .completeOnTimeout(ResponseEntity.ok("Prior authorization final status: " +
+                        getStatusDescription(StatusPoller.TIMEOUT) + "\nResource ID: " + id),
+                        POLL_WAIT_SECONDS, TimeUnit.SECONDS)
+                .exceptionally(e -> errorResponse("Error polling for status of prior authorization request", e));
     }
 
     /**
      * Check the status of a prior authorization request with mock scenario
      */
     @GetMapping("/{id}/status")
-    public ResponseEntity<String> checkStatusWithMock(@PathVariable String id) {
-        try {
-            // Check the status with mock scenario
-            log.info("Checking status of prior authorization request with mock scenario: {}", id);
-            String status = availityServiceReviewService.checkServiceReviewStatusWithMock(id);
-            String jsonResponse = availityServiceReviewService.getLastResponseJson();
-
-            // Return a response with both the status and the JSON response
-            return ResponseEntity.ok("Status: " + getStatusDescription(status) +
-                    "\nResource ID: " + id +
-                    "\n\n" + jsonResponse);
-        } catch (Exception e) {
-            log.error("Error checking status of prior authorization request with mock scenario", e);
-            return ResponseEntity.status(500)
-                    .body("Error - " + e.getMessage());
-        }
+    public CompletableFuture<ResponseEntity<String>> checkStatusWithMock(@PathVariable String id) {
+        // Check the status with mock scenario
+        log.info("Checking status of prior authorization request with mock scenario: {}", id);
+        return availityServiceReviewService.checkServiceReviewStatusWithMockAsync(id)
+                .thenApply(status -> {
+                    String jsonResponse = availityServiceReviewService.getMockStatusResponseJson(id);
+
+                    // Return a response with both the status and the JSON response
+                    return ResponseEntity.ok("Status: " + getStatusDescription(status) +
+                            "\nResource ID: " + id +
+                            "\n\n" + jsonResponse);
+                })
+                .exceptionally(e -> errorResponse("Error checking status of prior authorization request with mock scenario", e));
+    }
+
+    /**
+     * Log a failed async call and turn it into a 500 response
+     */
+    private static ResponseEntity<String> errorResponse(String message, Throwable error) {
+        Throwable cause = UpstreamErrors.unwrap(error);
+        log.error(message, cause);
+        return ResponseEntity.status(UpstreamErrors.httpStatusFor(cause))
+                .body("Error - " + cause.getMessage());
     }
 
     /**
@@ -18,6 +18,8 @@ public class ApiCall {
     private Map<String, Object> fhirPayload;
     private Map<String, Object> availityPayload;
     private Map<String, Object> response;
+    // Number of times the upstream call was retried after a transient failure; set from the HTTP client's threads
+    private volatile int retryCount;
 
     public ApiCall() {
         this.id = UUID.randomUUID().toString();
@@ -103,4 +105,12 @@ public class ApiCall {
     public void setResponse(Map<String, Object> response) {
         this.response = response;
     }
+
+    public int getRetryCount() {
+        return retryCount;
+    }
+
+    public void setRetryCount(int retryCount) {
+        this.retryCount = retryCount;
+    }
 }
@@ -0,0 +1,73 @@
+package com.example.fhirpriorauth.model;
+
+import java.time.Instant;
+
+/**
+ * Immutable snapshot of the polling of one service review, as kept in the polling registry
+ */
+public class PollingStatus {
+    private final long sequence;
+    private final String id;
+    private final String status;
+    private final int attempts;
+    private final Instant lastPolled;
+    private final Instant nextPoll;
+    private final boolean completed;
+    private final String error;
+
+    public PollingStatus(long sequence, String id, String status, int attempts, Instant lastPolled, Instant nextPoll,
+                         boolean completed, String error) {
+        this.sequence = sequence;
+        this.id = id;
+        this.status = status;
+        this.attempts = attempts;
+        this.lastPolled = lastPolled;
+        this.nextPoll = nextPoll;
+        this.completed = completed;
+        this.error = error;
+    }
+
+    /**
+     * Get the registration order of the review, used as the cursor when listing the registry
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Get the last mapped status, or null before the first successful check
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Instant getLastPolled() {
+        return lastPolled;
+    }
+
+    /**
+     * Get when the next check is due, or null while a check is running or once polling has finished
+     */
+    public Instant getNextPoll() {
+        return nextPoll;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * Get the error of the last check, or null if it succeeded
+     */
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.fhirpriorauth.model;
+
+import java.util.Map;
+
+/**
+ * A service review submission waiting in the durable submission queue, stored as JSON in the submission log.
+ * Once Availity accepts a submission, an outcome record (deliveredSequence and resourceId) is logged for it, so
+ * it is not sent again if the JVM stops before its acknowledgement is checkpointed. A submission that is rejected,
+ * or given up on after too many transient failures, gets an outcome record with an error instead.
+ */
+public class QueuedSubmission {
+    private String requestId;
+    private String idempotencyKey;
+    private boolean useMockData;
+    private Map<String, Object> availityPayload;
+    private Long deliveredSequence;
+    private String resourceId;
+    private String error;
+    private Long enqueuedAt;
+
+    public QueuedSubmission() {
+    }
+
+    /**
+     * A submission of an Availity service review payload
+     */
+    public static QueuedSubmission forPayload(String requestId, Map<String, Object> availityPayload, String idempotencyKey) {
+        QueuedSubmission submission = new QueuedSubmission();
+        submission.setRequestId(requestId);
+        submission.setAvailityPayload(availityPayload);
+        submission.setIdempotencyKey(idempotencyKey);
+        return submission;
+    }
+
+    /**
+     * A submission of the built-in test service review
+     */
+    public static QueuedSubmission forTestRequest(boolean useMockData, String idempotencyKey) {
+        QueuedSubmission submission = new QueuedSubmission();
+        submission.setUseMockData(useMockData);
+        submission.setIdempotencyKey(idempotencyKey);
+        return submission;
+    }
+
+    /**
+     * The outcome of the submission logged under a sequence number: Availity accepted it as a service review
+     */
+    public static QueuedSubmission forOutcome(long deliveredSequence, String resourceId) {
+        QueuedSubmission outcome = new QueuedSubmission();
+        outcome.setDeliveredSequence(deliveredSequence);
+        outcome.setResourceId(resourceId);
+        return outcome;
+    }
+
+    /**
+     * The outcome of the submission logged under a sequence number: it was rejected or given up on, and is not
+     * sent again
+     */
+    public static QueuedSubmission forFailure(long deliveredSequence, String error) {
+        QueuedSubmission outcome = new QueuedSubmission();
+        outcome.setDeliveredSequence(deliveredSequence);
+        outcome.setError(error);
+        return outcome;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(String requestId) {
+        this.requestId = requestId;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public boolean isUseMockData() {
+        return useMockData;
+    }
+
+    public void setUseMockData(boolean useMockData) {
+        this.useMockData = useMockData;
+    }
+
+    public Map<String, Object> getAvailityPayload() {
+        return availityPayload;
+    }
+
+    public void setAvailityPayload(Map<String, Object> availityPayload) {
+        this.availityPayload = availityPayload;
+    }
+
+    /**
+     * Get the sequence number of the submission this outcome record is for, or null for a submission record
+     */
+    public Long getDeliveredSequence() {
+        return deliveredSequence;
+    }
+
+    public void setDeliveredSequence(Long deliveredSequence) {
+        this.deliveredSequence = deliveredSequence;
+    }
+
+    /**
+     * Get the service review ID Availity returned, on outcome records
+     */
+    public String getResourceId() {
+        return resourceId;
+    }
+
+    public void setResourceId(String resourceId) {
+        this.resourceId = resourceId;
+    }
+
+    /**
+     * Get why the submission failed, on outcome records of failed submissions
+     */
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    /**
+     * Get when the submission was first queued, in epoch milliseconds
+     */
+    public Long getEnqueuedAt() {
+        return enqueuedAt;
+    }
+
+    public void setEnqueuedAt(Long enqueuedAt) {
+        this.enqueuedAt = enqueuedAt;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.fhirpriorauth.model;
+
+import java.util.Objects;
+
+/**
+ * The kind of a service review, as far as how long payers take to decide it: payer, service type and request type
+ */
+public final class ReviewClass {
+    private final String payerId;
+    private final String serviceTypeCode;
+    private final String requestTypeCode;
+
+    public ReviewClass(String payerId, String serviceTypeCode, String requestTypeCode) {
+        this.payerId = payerId;
+        this.serviceTypeCode = serviceTypeCode;
+        this.requestTypeCode = requestTypeCode;
+    }
+
+    /**
+     * Get the payer ID, or null if the review has none (it is then submitted with the default account)
+     */
+    public String getPayerId() {
+        return payerId;
+    }
+
+    public String getServiceTypeCode() {
+        return serviceTypeCode;
+    }
+
+    public String getRequestTypeCode() {
+        return requestTypeCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ReviewClass)) {
+            return false;
+        }
+        ReviewClass other = (ReviewClass) o;
+        return Objects.equals(payerId, other.payerId)
+                && Objects.equals(serviceTypeCode, other.serviceTypeCode)
+                && Objects.equals(requestTypeCode, other.requestTypeCode);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(payerId, serviceTypeCode, requestTypeCode);
+    }
+
+    @Override
+    public String toString() {
+        return payerId + "/" + serviceTypeCode + "/" + requestTypeCode;
+    }
+}
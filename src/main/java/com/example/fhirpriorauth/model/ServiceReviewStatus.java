@@ -0,0 +1,49 @@
+package com.example.fhirpriorauth.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The status fields of an Availity service review, as read from a status check response
+ */
+public class ServiceReviewStatus {
+    private String statusCode = "unknown";
+    private String status = "Unknown";
+    private List<String> statusReasons = new ArrayList<>();
+    private List<String> validationMessages = new ArrayList<>();
+
+    public String getStatusCode() {
+        return statusCode;
+    }
+
+    public void setStatusCode(String statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    /**
+     * Get the status reasons, each as "value (code)"
+     */
+    public List<String> getStatusReasons() {
+        return statusReasons;
+    }
+
+    public void setStatusReasons(List<String> statusReasons) {
+        this.statusReasons = statusReasons;
+    }
+
+    public List<String> getValidationMessages() {
+        return validationMessages;
+    }
+
+    public void setValidationMessages(List<String> validationMessages) {
+        this.validationMessages = validationMessages;
+    }
+}
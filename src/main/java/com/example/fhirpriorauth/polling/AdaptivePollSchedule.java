@@ -0,0 +1,125 @@
+package com.example.fhirpriorauth.polling;
+
+import com.example.fhirpriorauth.model.ReviewClass;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Poll schedule learned from how long each class of review (payer, service type, request type) takes to be decided.
+ *
+ * Every review that reaches a final status adds its time to decision, measured from the 202 Accepted of its
+ * submission, to its class's QuantileSketch. Once a class has min-samples, each review of it is polled at the
+ * next quantile-step of that distribution: a poll covers the same share of the decisions whichever part of the
+ * distribution it falls in, so polls are sparse while decisions are unlikely and dense around the typical decision
+ * time. Delays are kept within min-delay-ms and max-delay-ms, so a decision is detected at most max-delay-ms
+ * (plus jitter) after it is made. That bound is all this schedule promises: an early, unlikely decision can be
+ * detected later than the backoff's short early delays would have, in exchange for far fewer polls overall.
+ * Classes without enough history, and reviews older than any decision seen, use the backoff instead.
+ */
+@Component
+public class AdaptivePollSchedule {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptivePollSchedule.class);
+
+    // Sketch sizing: under 500 buckets cover a day at 2% accuracy; counts halve every DECAY_AT decisions
+    private static final int MAX_BUCKETS = 512;
+    private static final long DECAY_AT = 10_000;
+
+    @Value("${availity.polling.adaptive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${availity.polling.adaptive.min-samples:20}")
+    private int minSamples;
+
+    @Value("${availity.polling.adaptive.quantile-step:0.05}")
+    private double quantileStep;
+
+    @Value("${availity.polling.adaptive.relative-accuracy:0.02}")
+    private double relativeAccuracy;
+
+    @Value("${availity.polling.adaptive.min-delay-ms:1000}")
+    private long minDelayMillis;
+
+    @Value("${availity.polling.max-delay-ms:30000}")
+    private long maxDelayMillis;
+
+    @Value("${availity.polling.adaptive.max-classes:1000}")
+    private int maxClasses;
+
+    // Access-ordered so the least recently used class is forgotten first
+    private final Map<ReviewClass, QuantileSketch> sketches = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ReviewClass, QuantileSketch> eldest) {
+                    return size() > maxClasses;
+                }
+            });
+
+    @Autowired
+    public AdaptivePollSchedule(MeterRegistry meterRegistry) {
+        Gauge.builder("availity.polling.adaptive.classes", sketches, Map::size)
+                .description("Review classes with a learned time-to-decision distribution")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Record how long a review took to be decided
+     *
+     * @param reviewClass The class of the review
+     * @param decisionMillis Time from the submission being accepted to the decision
+     */
+    public void record(ReviewClass reviewClass, long decisionMillis) {
+        if (!enabled) {
+            return;
+        }
+        QuantileSketch sketch = sketches.computeIfAbsent(reviewClass,
+                key -> new QuantileSketch(relativeAccuracy, MAX_BUCKETS, DECAY_AT));
+        synchronized (sketch) {
+            sketch.add(decisionMillis);
+        }
+        log.atDebug().setMessage("Recorded time to decision")
+                .addKeyValue("reviewClass", reviewClass)
+                .addKeyValue("decisionMillis", decisionMillis)
+                .log();
+    }
+
+    /**
+     * Get the delay before the next poll of a review
+     *
+     * @param reviewClass The class of the review
+     * @param elapsedMillis Time since the review's submission was accepted
+     * @return The delay in milliseconds, or -1 if the class has too little history or the review is
+     *         already older than nearly all decisions seen
+     */
+    public long nextDelay(ReviewClass reviewClass, long elapsedMillis) {
+        if (!enabled) {
+            return -1;
+        }
+        QuantileSketch sketch = sketches.get(reviewClass);
+        if (sketch == null) {
+            return -1;
+        }
+        double target;
+        synchronized (sketch) {
+            if (sketch.count() < minSamples) {
+                return -1;
+            }
+            double rank = sketch.rank(elapsedMillis);
+            if (rank >= 1 - quantileStep / 2) {
+                return -1;
+            }
+            target = sketch.quantile(Math.min(1, rank + quantileStep));
+        }
+        long delay = Math.round(target - elapsedMillis);
+        return Math.max(minDelayMillis, Math.min(maxDelayMillis, delay));
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.fhirpriorauth.polling;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Starts due status polls in per-tick batches, shared fairly between payers.
+ *
+ * Polls that come due are queued per payer. Each tick the scheduler builds one batch by weighted round-robin
+ * over the payers with polls waiting (each turn a payer contributes up to its weight), skipping payers at their
+ * concurrency cap, until max-dispatch-per-tick. A payer with thousands of pending reviews therefore gets its
+ * share of the tick rather than the whole of it, and the rotation starts one payer further along every tick.
+ * The batch is started in evenly spaced slices across the tick so upstream load is smooth rather than a burst
+ * on the tick boundary; whatever does not fit waits, in order, for the next tick.
+ */
+final class FairPollScheduler implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(FairPollScheduler.class);
+
+    // Payer queue of polls for reviews whose payer is not known
+    static final String UNKNOWN_PAYER = "default";
+
+    private final PollFairnessProperties properties;
+    private final long tickNanos;
+    private final Executor workers;
+    private final ScheduledExecutorService ticker;
+
+    private final Queue<Task> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    // Owned by the tick thread; insertion-ordered so the round-robin rotation is stable
+    private final LinkedHashMap<String, PayerQueue> payers = new LinkedHashMap<>();
+    private int rotation;
+
+    private final DistributionSummary batchSize;
+    private final Timer schedulingLag;
+
+    /**
+     * Create and start a scheduler
+     *
+     * @param properties The fairness settings
+     * @param tickMillis How often a batch is built
+     * @param workers Runs the polls
+     * @param meterRegistry Registry for the batch size, lag and pending metrics
+     */
+    FairPollScheduler(PollFairnessProperties properties, long tickMillis, Executor workers, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.workers = workers;
+        this.batchSize = DistributionSummary.builder("availity.polling.batch.size")
+                .description("Polls started per scheduler tick")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.schedulingLag = Timer.builder("availity.polling.schedule.lag")
+                .description("Delay between a poll coming due and being started")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("availity.polling.pending", pending, AtomicInteger::get)
+                .description("Due polls waiting for a batch")
+                .register(meterRegistry);
+
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "status-poll-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queue a due poll
+     *
+     * @param payer The payer of the review, or null if unknown
+     * @param dueNanos When the poll came due (System.nanoTime), for the lag metric
+     * @param poll Starts the poll; the payer's concurrency slot is held until the returned future completes
+     */
+    void submit(String payer, long dueNanos, Supplier<CompletableFuture<?>> poll) {
+        incoming.add(new Task(payer != null ? payer : UNKNOWN_PAYER, dueNanos, poll));
+        pending.incrementAndGet();
+    }
+
+    /**
+     * Get the number of due polls not yet started
+     */
+    int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Build this tick's batch and start it in slices across the tick
+     */
+    private void tick() {
+        try {
+            Task task;
+            while ((task = incoming.poll()) != null) {
+                task.payerQueue = payers.computeIfAbsent(task.payer, this::createPayerQueue);
+                task.payerQueue.tasks.add(task);
+            }
+
+            List<Task> batch = nextBatch();
+            batchSize.record(batch.size());
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            int slices = Math.max(1, Math.min(properties.getSmoothingSlices(), batch.size()));
+            int perSlice = (batch.size() + slices - 1) / slices;
+            for (int slice = 0; slice < slices; slice++) {
+                List<Task> tasks = batch.subList(Math.min(slice * perSlice, batch.size()),
+                        Math.min((slice + 1) * perSlice, batch.size()));
+                if (slice == 0) {
+                    start(tasks);
+                } else {
+                    ticker.schedule(() -> start(tasks), tickNanos * slice / slices, TimeUnit.NANOSECONDS);
+                }
+            }
+            log.debug("Poll batch of {} across {} payers, {} still pending", batch.size(), payers.size(), pending.get());
+        } catch (RuntimeException e) {
+            log.error("Poll scheduler tick failed", e);
+        }
+    }
+
+    /**
+     * Weighted round-robin over the payers with polls waiting and a free concurrency slot
+     */
+    private List<Task> nextBatch() {
+        int budget = properties.getMaxDispatchPerTick();
+        List<Task> batch = new ArrayList<>();
+        List<PayerQueue> order = new ArrayList<>(payers.values());
+        if (order.isEmpty()) {
+            return batch;
+        }
+        int start = Math.floorMod(rotation++, order.size());
+
+        boolean progress = true;
+        while (batch.size() < budget && progress) {
+            progress = false;
+            for (int i = 0; i < order.size() && batch.size() < budget; i++) {
+                PayerQueue payer = order.get((start + i) % order.size());
+                for (int turn = 0; turn < payer.weight && batch.size() < budget; turn++) {
+                    if (payer.tasks.isEmpty() || payer.inFlight.get() >= properties.getPayerConcurrency()) {
+                        break;
+                    }
+                    payer.inFlight.incrementAndGet();
+                    batch.add(payer.tasks.poll());
+                    progress = true;
+                }
+            }
+        }
+
+        // Forget idle payers so the rotation only covers payers with work
+        Iterator<Map.Entry<String, PayerQueue>> iterator = payers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            PayerQueue payer = iterator.next().getValue();
+            if (payer.tasks.isEmpty() && payer.inFlight.get() == 0) {
+                iterator.remove();
+            }
+        }
+        return batch;
+    }
+
+    private void start(List<Task> tasks) {
+        long now = System.nanoTime();
+        for (Task task : tasks) {
+            pending.decrementAndGet();
+            schedulingLag.record(Math.max(0, now - task.dueNanos), TimeUnit.NANOSECONDS);
+            PayerQueue payer = task.payerQueue;
+            try {
+                workers.execute(() -> {
+                    CompletableFuture<?> poll;
+                    try {
+                        poll = task.poll.get();
+                    } catch (RuntimeException e) {
+                        log.warn("Status poll for payer {} failed to start", task.payer, e);
+                        payer.inFlight.decrementAndGet();
+                        return;
+                    }
+                    poll.whenComplete((result, error) -> payer.inFlight.decrementAndGet());
+                });
+            } catch (RuntimeException e) {
+                log.warn("Status poll for payer {} rejected", task.payer, e);
+                payer.inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private PayerQueue createPayerQueue(String payer) {
+        return new PayerQueue(properties.weightOf(payer));
+    }
+
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+
+    private static final class Task {
+        final String payer;
+        final long dueNanos;
+        final Supplier<CompletableFuture<?>> poll;
+        PayerQueue payerQueue;
+
+        Task(String payer, long dueNanos, Supplier<CompletableFuture<?>> poll) {
+            this.payer = payer;
+            this.dueNanos = dueNanos;
+            this.poll = poll;
+        }
+    }
+
+    /**
+     * The due polls of one payer, and how many of its polls are running
+     */
+    private static final class PayerQueue {
+        final int weight;
+        final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        PayerQueue(int weight) {
+            this.weight = weight;
+        }
+    }
+}
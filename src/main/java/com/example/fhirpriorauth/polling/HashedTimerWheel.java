@@ -0,0 +1,276 @@
+package com.example.fhirpriorauth.polling;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel for large numbers of coarse-grained timeouts, such as the next poll of every in-flight
+ * service review.
+ *
+ * Scheduling and cancelling are O(1) and lock-free for the caller: timeouts are handed to the single tick thread
+ * through a queue, and it files them into the bucket of their deadline tick. Each tick the thread expires its
+ * bucket and hands the due tasks to the executor, so the tasks themselves never run on the tick thread. A timeout
+ * fires up to one tick late, never early.
+ */
+public final class HashedTimerWheel implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(HashedTimerWheel.class);
+
+    // Timeouts filed into buckets per tick, so a burst of registrations cannot stall a tick
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Executor executor;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger scheduled = new AtomicInteger();
+    private final Thread ticker;
+    private final long startNanos;
+    private volatile boolean stopped;
+    private long tick;
+
+    /**
+     * Create and start a timer wheel
+     *
+     * @param name The name of the tick thread
+     * @param tickDuration The resolution of the wheel
+     * @param unit The unit of tickDuration
+     * @param wheelSize The number of buckets, rounded up to a power of two; one turn of the wheel should cover
+     *                  the usual delays, longer ones wait in their bucket for several turns
+     * @param executor Runs the expired tasks
+     */
+    public HashedTimerWheel(String name, long tickDuration, TimeUnit unit, int wheelSize, Executor executor) {
+        if (tickDuration <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick duration and wheel size must be positive");
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        int size = Integer.highestOneBit(((wheelSize - 1) << 1) | 1);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.executor = executor;
+        this.startNanos = System.nanoTime();
+        this.ticker = new Thread(this::run, name);
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    /**
+     * Schedule a task to run once after a delay
+     *
+     * @param task The task, run on the executor
+     * @param delay The delay
+     * @param unit The unit of delay
+     * @return The timeout, which can be cancelled until the task is handed to the executor
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (stopped) {
+            throw new RejectedExecutionException("Timer wheel is stopped");
+        }
+        long deadline = System.nanoTime() - startNanos + Math.max(0, unit.toNanos(delay));
+        Timeout timeout = new Timeout(this, task, deadline);
+        scheduled.incrementAndGet();
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Get the number of scheduled timeouts that have neither expired nor been cancelled
+     */
+    public int size() {
+        return scheduled.get();
+    }
+
+    @Override
+    public void close() {
+        stopped = true;
+        ticker.interrupt();
+        try {
+            ticker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Tick loop: wait for the next tick, file new timeouts, unlink cancelled ones and expire the current bucket
+     */
+    private void run() {
+        while (!stopped) {
+            long deadline = waitForNextTick();
+            if (deadline < 0) {
+                continue;
+            }
+            removeCancelled();
+            transferPending();
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * Sleep until the end of the current tick
+     *
+     * @return The time of the tick relative to the start, or -1 if woken up early
+     */
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        long sleepNanos = deadline - (System.nanoTime() - startNanos);
+        if (sleepNanos > 0) {
+            LockSupport.parkNanos(this, sleepNanos);
+            if (System.nanoTime() - startNanos < deadline) {
+                return -1;
+            }
+        }
+        return deadline;
+    }
+
+    private void transferPending() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = pending.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state.get() != Timeout.SCHEDULED) {
+                continue;
+            }
+            // File it in the bucket of its deadline, or the current one if that has already passed
+            long deadlineTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (deadlineTick - tick) / wheel.length;
+            wheel[(int) (Math.max(deadlineTick, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void run(Timeout timeout) {
+        scheduled.decrementAndGet();
+        try {
+            executor.execute(timeout.task);
+        } catch (RuntimeException e) {
+            log.warn("Failed to run an expired timeout", e);
+        }
+    }
+
+    /**
+     * A scheduled task
+     */
+    public static final class Timeout {
+        private static final int SCHEDULED = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final HashedTimerWheel wheel;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(SCHEDULED);
+
+        // Owned by the tick thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(HashedTimerWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancel the task if it has not been handed to the executor yet
+         *
+         * @return Whether it was cancelled
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(SCHEDULED, CANCELLED)) {
+                return false;
+            }
+            wheel.scheduled.decrementAndGet();
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+    }
+
+    /**
+     * Doubly-linked list of the timeouts of one slot, touched only by the tick thread
+     */
+    private final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.previous = tail;
+                tail = timeout;
+            }
+        }
+
+        /**
+         * Hand the timeouts due by the deadline to the executor; the others wait for a later turn of the wheel
+         */
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    remove(timeout);
+                    if (timeout.state.compareAndSet(Timeout.SCHEDULED, Timeout.EXPIRED)) {
+                        HashedTimerWheel.this.run(timeout);
+                    }
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.previous != null) {
+                timeout.previous.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.previous = timeout.previous;
+            } else {
+                tail = timeout.previous;
+            }
+            timeout.previous = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.fhirpriorauth.polling;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * How due status polls are shared out between payers, configured as
+ * <pre>
+ * availity.polling.fairness.payer-concurrency=8
+ * availity.polling.fairness.max-dispatch-per-tick=200
+ * availity.polling.fairness.smoothing-slices=4
+ * availity.polling.fairness.weights.BCBSF=2
+ * </pre>
+ * Payers without a weight get default-weight.
+ */
+@ConfigurationProperties(prefix = "availity.polling.fairness")
+public class PollFairnessProperties {
+
+    private int payerConcurrency = 8;
+    private int maxDispatchPerTick = 200;
+    private int smoothingSlices = 4;
+    private int defaultWeight = 1;
+    private Map<String, Integer> weights = new LinkedHashMap<>();
+
+    /**
+     * Get the most status checks in flight at once for one payer
+     */
+    public int getPayerConcurrency() {
+        return payerConcurrency;
+    }
+
+    public void setPayerConcurrency(int payerConcurrency) {
+        this.payerConcurrency = payerConcurrency;
+    }
+
+    /**
+     * Get the most polls started per tick; the rest wait for the next tick
+     */
+    public int getMaxDispatchPerTick() {
+        return maxDispatchPerTick;
+    }
+
+    public void setMaxDispatchPerTick(int maxDispatchPerTick) {
+        this.maxDispatchPerTick = maxDispatchPerTick;
+    }
+
+    /**
+     * Get the number of evenly spaced slices a tick's batch is started in
+     */
+    public int getSmoothingSlices() {
+        return smoothingSlices;
+    }
+
+    public void setSmoothingSlices(int smoothingSlices) {
+        this.smoothingSlices = smoothingSlices;
+    }
+
+    public int getDefaultWeight() {
+        return defaultWeight;
+    }
+
+    public void setDefaultWeight(int defaultWeight) {
+        this.defaultWeight = defaultWeight;
+    }
+
+    /**
+     * Get the polls per round-robin turn of each payer
+     */
+    public Map<String, Integer> getWeights() {
+        return weights;
+    }
+
+    public void setWeights(Map<String, Integer> weights) {
+        this.weights = weights;
+    }
+
+    public int weightOf(String payer) {
+        return Math.max(1, weights.getOrDefault(payer, defaultWeight));
+    }
+}
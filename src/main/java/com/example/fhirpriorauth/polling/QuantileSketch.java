@@ -0,0 +1,145 @@
+package com.example.fhirpriorauth.polling;
+
+/**
+ * Streaming quantile sketch of positive values with bounded relative error (the DDSketch log-bucket scheme).
+ *
+ * A value x is counted in bucket ceil(log_gamma(x)), gamma = (1 + a) / (1 - a), and every value in a bucket is
+ * within relative error a of the bucket's representative value, so quantiles are accurate to a over any range:
+ * a day of milliseconds at a = 0.02 needs under 500 buckets. Buckets live in a dense array grown to cover the
+ * values seen; beyond maxBuckets the lowest ones are merged. Once decayAt values have been added all counts are
+ * halved, so the sketch follows a payer whose turnaround changes. Not thread-safe.
+ */
+final class QuantileSketch {
+
+    private final double gamma;
+    private final double logGamma;
+    private final int maxBuckets;
+    private final long decayAt;
+
+    // counts[i] is the count of bucket offset + i
+    private long[] counts = new long[0];
+    private int offset;
+    private long count;
+
+    /**
+     * Create an empty sketch
+     *
+     * @param relativeAccuracy The relative error of quantiles, e.g. 0.02
+     * @param maxBuckets Most buckets kept; lower buckets are merged beyond it
+     * @param decayAt Number of values after which all counts are halved
+     */
+    QuantileSketch(double relativeAccuracy, int maxBuckets, long decayAt) {
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.maxBuckets = maxBuckets;
+        this.decayAt = decayAt;
+    }
+
+    /**
+     * Add a value; values below 1 are counted as 1
+     */
+    void add(double value) {
+        int index = indexOf(value);
+        if (counts.length == 0) {
+            counts = new long[1];
+            offset = index;
+        } else if (index < offset) {
+            long[] grown = new long[counts.length + offset - index];
+            System.arraycopy(counts, 0, grown, offset - index, counts.length);
+            counts = grown;
+            offset = index;
+        } else if (index >= offset + counts.length) {
+            long[] grown = new long[index - offset + 1];
+            System.arraycopy(counts, 0, grown, 0, counts.length);
+            counts = grown;
+        }
+        counts[index - offset]++;
+        count++;
+
+        if (counts.length > maxBuckets) {
+            collapseLowest();
+        }
+        if (count >= decayAt) {
+            decay();
+        }
+    }
+
+    /**
+     * Get the number of values counted (after decay)
+     */
+    long count() {
+        return count;
+    }
+
+    /**
+     * Get the value at a quantile
+     *
+     * @param q The quantile, 0 to 1
+     * @return The value, or NaN if the sketch is empty
+     */
+    double quantile(double q) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double rank = Math.max(0, Math.min(1, q)) * (count - 1);
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative > rank) {
+                return valueOf(offset + i);
+            }
+        }
+        return valueOf(offset + counts.length - 1);
+    }
+
+    /**
+     * Get the fraction of values at or below a value
+     *
+     * @param value The value
+     * @return The fraction, 0 to 1, or 0 if the sketch is empty
+     */
+    double rank(double value) {
+        if (count == 0) {
+            return 0;
+        }
+        int last = Math.min(indexOf(value) - offset, counts.length - 1);
+        long cumulative = 0;
+        for (int i = 0; i <= last; i++) {
+            cumulative += counts[i];
+        }
+        return (double) cumulative / count;
+    }
+
+    private int indexOf(double value) {
+        return (int) Math.ceil(Math.log(Math.max(1, value)) / logGamma);
+    }
+
+    /**
+     * The value reported for a bucket: equally far, relatively, from both of its bounds
+     */
+    private double valueOf(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    private void collapseLowest() {
+        int excess = counts.length - maxBuckets;
+        long merged = 0;
+        for (int i = 0; i <= excess; i++) {
+            merged += counts[i];
+        }
+        long[] kept = new long[maxBuckets];
+        System.arraycopy(counts, excess, kept, 0, maxBuckets);
+        kept[0] = merged;
+        counts = kept;
+        offset += excess;
+    }
+
+    private void decay() {
+        count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            // Round up so rare buckets are not forgotten after one halving
+            counts[i] = (counts[i] + 1) / 2;
+            count += counts[i];
+        }
+    }
+}
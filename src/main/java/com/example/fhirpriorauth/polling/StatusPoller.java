@@ -0,0 +1,533 @@
+package com.example.fhirpriorauth.polling;
+
+import com.example.fhirpriorauth.model.ReviewClass;
+import com.example.fhirpriorauth.resilience.UpstreamErrors;
+import com.example.fhirpriorauth.service.AvailityServiceReviewService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Polls the status of in-flight service reviews until they leave "In Process" (status "0").
+ *
+ * Callers register a review ID and get a Handle whose future completes with the final status, instead of
+ * sleeping in a request thread between checks. The next poll of every review is a timeout on a hashed timer
+ * wheel, so tens of thousands of reviews cost one tick thread. Due polls go to the FairPollScheduler, which
+ * starts them in per-tick batches shared between payers on a small worker pool; the status checks then run on
+ * the shared HTTP client. Reviews whose class has enough decision history are polled on the AdaptivePollSchedule;
+ * the others back off exponentially (with jitter) between polls. Reviews Availity pushes status notifications for
+ * (see onCallback) are only polled every safety-net-delay-ms, in case a notification is lost.
+ */
+@Component
+public class StatusPoller {
+
+    private static final Logger log = LoggerFactory.getLogger(StatusPoller.class);
+
+    // Mapped status of a review Availity is still working on
+    public static final String IN_PROCESS = "0";
+
+    // Final status reported when a review is still in process after its last attempt
+    public static final String TIMEOUT = "TIMEOUT";
+
+    @Value("${availity.polling.tick-ms:100}")
+    private long tickMillis;
+
+    @Value("${availity.polling.wheel-size:512}")
+    private int wheelSize;
+
+    @Value("${availity.polling.workers:4}")
+    private int workers;
+
+    @Value("${availity.polling.max-in-flight:50000}")
+    private int maxInFlight;
+
+    @Value("${availity.polling.backoff-multiplier:2.0}")
+    private double backoffMultiplier;
+
+    @Value("${availity.polling.max-delay-ms:30000}")
+    private long maxDelayMillis;
+
+    @Value("${availity.polling.jitter:0.1}")
+    private double jitter;
+
+    @Value("${availity.callbacks.enabled:false}")
+    private boolean callbacksEnabled;
+
+    @Value("${availity.callbacks.safety-net-delay-ms:300000}")
+    private long safetyNetDelayMillis;
+
+    // Maximum number of reviews to remember a status notification was received for
+    private static final int MAX_CALLBACK_REVIEWS = 10_000;
+
+    private final AvailityServiceReviewService serviceReviewService;
+    private final PollFairnessProperties fairnessProperties;
+    private final AdaptivePollSchedule adaptiveSchedule;
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentHashMap<String, Handle> inFlight = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Reviews a status notification has been received for, so they are polled as a safety net only
+    private final Set<String> callbackReviews = Collections.newSetFromMap(Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_CALLBACK_REVIEWS;
+                }
+            }));
+    private ExecutorService workerPool;
+    private HashedTimerWheel timerWheel;
+    private FairPollScheduler scheduler;
+
+    private final Counter polls;
+    private final Counter completed;
+    private final Counter timedOut;
+    private final Counter failed;
+    private final DistributionSummary adaptiveAttempts;
+    private final DistributionSummary backoffAttempts;
+
+    @Autowired
+    public StatusPoller(AvailityServiceReviewService serviceReviewService, PollFairnessProperties fairnessProperties,
+                        AdaptivePollSchedule adaptiveSchedule, MeterRegistry meterRegistry) {
+        this.serviceReviewService = serviceReviewService;
+        this.fairnessProperties = fairnessProperties;
+        this.adaptiveSchedule = adaptiveSchedule;
+        this.meterRegistry = meterRegistry;
+        this.polls = meterRegistry.counter("availity.polling.polls");
+        this.completed = meterRegistry.counter("availity.polling.finished", "outcome", "final");
+        this.timedOut = meterRegistry.counter("availity.polling.finished", "outcome", "timeout");
+        this.failed = meterRegistry.counter("availity.polling.finished", "outcome", "error");
+        this.adaptiveAttempts = DistributionSummary.builder("availity.polling.attempts")
+                .description("Status checks per review until it left In Process, by how its polls were scheduled")
+                .tag("schedule", "adaptive")
+                .register(meterRegistry);
+        this.backoffAttempts = DistributionSummary.builder("availity.polling.attempts")
+                .description("Status checks per review until it left In Process, by how its polls were scheduled")
+                .tag("schedule", "backoff")
+                .register(meterRegistry);
+        Gauge.builder("availity.polling.in-flight", inFlight, ConcurrentHashMap::size)
+                .description("Service reviews being polled until they leave In Process")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger workerCount = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "status-poller-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler = new FairPollScheduler(fairnessProperties, tickMillis, workerPool, meterRegistry);
+        // Expired timeouts only queue the poll with the scheduler, so they run on the tick thread
+        timerWheel = new HashedTimerWheel("status-poller-timer", tickMillis, TimeUnit.MILLISECONDS, wheelSize,
+                Runnable::run);
+    }
+
+    /**
+     * Start polling a service review, or join the polling already in progress for it
+     *
+     * @param id The ID of the service review
+     * @param maxAttempts Maximum number of status checks before giving up with TIMEOUT
+     * @param initialDelayMillis Delay after the first check, growing by the backoff multiplier up to max-delay-ms,
+     *                           when the review's class has no learned schedule
+     * @param useMockScenario Whether to check the status with the mock scenario
+     * @return The handle of the review's polling
+     */
+    public Handle register(String id, int maxAttempts, long initialDelayMillis, boolean useMockScenario) {
+        Handle existing = inFlight.get(id);
+        if (existing != null) {
+            return existing;
+        }
+        if (inFlight.size() >= maxInFlight) {
+            throw new RuntimeException("Too many service reviews being polled (" + maxInFlight + ")");
+        }
+
+        Handle handle = new Handle(id, maxAttempts, initialDelayMillis, useMockScenario,
+                serviceReviewService.getSubmittedReview(id));
+        existing = inFlight.putIfAbsent(id, handle);
+        if (existing != null) {
+            return existing;
+        }
+        // Also covers cancellation through the handle
+        handle.result.whenComplete((status, error) -> {
+            inFlight.remove(id, handle);
+            notifyListeners(handle);
+        });
+        log.atInfo().setMessage("Polling for service review status")
+                .addKeyValue("resourceId", id)
+                .addKeyValue("maxAttempts", maxAttempts)
+                .log();
+        // Reviews with status notifications wait for them; with a learned schedule the first check waits for
+        // the first decisions of the review's class
+        long firstDelay = expectsCallback(handle) ? safetyNetDelayMillis : Math.max(0, adaptiveDelay(handle));
+        schedule(handle, firstDelay);
+        notifyListeners(handle);
+        return handle;
+    }
+
+    /**
+     * Get the polling of a service review, if it is still in progress
+     *
+     * @param id The ID of the service review
+     * @return The handle, or null
+     */
+    public Handle get(String id) {
+        return inFlight.get(id);
+    }
+
+    /**
+     * Apply a status notification pushed by Availity: a final status finishes the review's polling, waking its
+     * waiters; otherwise its polling drops to the safety-net interval
+     *
+     * @param id The ID of the service review
+     * @param status The mapped status from the notification
+     * @return Whether the review was being polled
+     */
+    public boolean onCallback(String id, String status) {
+        callbackReviews.add(id);
+        Handle handle = inFlight.get(id);
+        if (handle == null) {
+            return false;
+        }
+        handle.lastStatus = status;
+        handle.lastError = null;
+        if (!IN_PROCESS.equals(status)) {
+            log.atInfo().setMessage("Service review decided by status notification")
+                    .addKeyValue("resourceId", id)
+                    .addKeyValue("status", status)
+                    .log();
+            finish(handle, status, null, Instant.now());
+        } else {
+            handle.lastInProcessAt = Instant.now();
+            // Replaces the pending poll, if any; a running one reschedules itself at the safety-net interval
+            if (handle.nextPollAt != null) {
+                HashedTimerWheel.Timeout scheduled = handle.timeout;
+                if (scheduled != null) {
+                    scheduled.cancel();
+                }
+                schedule(handle, safetyNetDelayMillis);
+            }
+            notifyListeners(handle);
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of service reviews being polled
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    /**
+     * Be told about every registered review after each poll and when its polling finishes
+     *
+     * @param listener The listener, called on a poller or HTTP client thread; it must not block
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    private void notifyListeners(Handle handle) {
+        for (Listener listener : listeners) {
+            try {
+                listener.onUpdate(handle);
+            } catch (RuntimeException e) {
+                log.warn("Polling listener failed for service review {}", handle.id, e);
+            }
+        }
+    }
+
+    /**
+     * Schedule the next poll of a review, superseding any poll scheduled before
+     */
+    private void schedule(Handle handle, long delayMillis) {
+        int generation = handle.generation.incrementAndGet();
+        handle.nextPollAt = Instant.now().plusMillis(delayMillis);
+        long dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        try {
+            handle.timeout = timerWheel.schedule(
+                    () -> scheduler.submit(serviceReviewService.getPayerId(handle.id), dueNanos,
+                            () -> poll(handle, generation)),
+                    delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            finish(handle, null, e, null);
+        }
+    }
+
+    /**
+     * Check a review's status once (on a worker) and either finish or schedule the next check
+     *
+     * @return A future completed once the check has been handled
+     */
+    private CompletableFuture<?> poll(Handle handle, int generation) {
+        if (handle.result.isDone() || handle.generation.get() != generation) {
+            return CompletableFuture.completedFuture(null);
+        }
+        handle.attempts++;
+        handle.lastPolledAt = Instant.now();
+        handle.nextPollAt = null;
+        polls.increment();
+
+        CompletableFuture<String> check;
+        try {
+            check = handle.useMockScenario
+                    ? serviceReviewService.checkServiceReviewStatusWithMockAsync(handle.id)
+                    : serviceReviewService.checkServiceReviewStatusAsync(handle.id);
+        } catch (RuntimeException e) {
+            check = CompletableFuture.failedFuture(e);
+        }
+        return check.whenComplete((status, error) -> {
+            // Finished by a status notification while the check was in flight
+            if (handle.result.isDone()) {
+                return;
+            }
+            if (error != null) {
+                Throwable cause = UpstreamErrors.unwrap(error);
+                // Shed by our rate limiter or circuit breaker: Availity never saw it, so try again later
+                handle.lastError = cause.getMessage();
+                if (UpstreamErrors.httpStatusFor(cause) != 500 && handle.attempts < handle.maxAttempts) {
+                    log.warn("Status poll of service review {} not sent ({}); retrying", handle.id, cause.getMessage());
+                    schedule(handle, nextDelay(handle));
+                    notifyListeners(handle);
+                    return;
+                }
+                finish(handle, null, cause, null);
+                return;
+            }
+
+            handle.lastStatus = status;
+            handle.lastError = null;
+            if (!IN_PROCESS.equals(status)) {
+                finish(handle, status, null, null);
+            } else if (handle.attempts >= handle.maxAttempts) {
+                log.warn("Reached maximum polling attempts. Service review {} still in process.", handle.id);
+                finish(handle, TIMEOUT, null, null);
+            } else {
+                log.info("Service review still in process. Attempt: {}/{}", handle.attempts, handle.maxAttempts);
+                handle.lastInProcessAt = handle.lastPolledAt;
+                schedule(handle, nextDelay(handle));
+                notifyListeners(handle);
+            }
+        });
+    }
+
+    /**
+     * Get the delay before the next poll: the safety-net interval if Availity pushes the review's status, else
+     * from the review class's learned schedule if it has one, else the initial delay grown by the backoff multiplier
+     * per attempt, capped at max-delay-ms; with +/- jitter so reviews registered together do not poll together
+     */
+    private long nextDelay(Handle handle) {
+        double delay = expectsCallback(handle) ? safetyNetDelayMillis : adaptiveDelay(handle);
+        if (delay < 0) {
+            delay = handle.initialDelayMillis * Math.pow(backoffMultiplier, Math.max(0, handle.attempts - 1));
+            delay = Math.min(delay, maxDelayMillis);
+        }
+        if (jitter > 0) {
+            delay *= 1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+        }
+        return Math.max(0, Math.round(delay));
+    }
+
+    /**
+     * Whether Availity is expected to push the review's status: callbacks are enabled and it was submitted through
+     * this instance, or a notification for it has already arrived
+     */
+    private boolean expectsCallback(Handle handle) {
+        return (callbacksEnabled && handle.submitted != null) || callbackReviews.contains(handle.id);
+    }
+
+    /**
+     * Get the delay the review class's learned schedule gives for the next poll of a review
+     *
+     * @return The delay in milliseconds, or -1 if the review's class is unknown or has no learned schedule
+     */
+    private long adaptiveDelay(Handle handle) {
+        if (handle.submitted == null) {
+            return -1;
+        }
+        long elapsedMillis = Duration.between(handle.submitted.getAcceptedAt(), Instant.now()).toMillis();
+        long delay = adaptiveSchedule.nextDelay(handle.submitted.getReviewClass(), elapsedMillis);
+        if (delay >= 0) {
+            handle.adaptive = true;
+        }
+        return delay;
+    }
+
+    /**
+     * Finish a review's polling
+     *
+     * @param decidedAt When the review was decided, if known exactly (from a status notification), else null
+     */
+    private void finish(Handle handle, String status, Throwable error, Instant decidedAt) {
+        inFlight.remove(handle.id, handle);
+        handle.nextPollAt = null;
+        // Only the first of a poll and a status notification finishing together counts
+        if (error != null) {
+            if (handle.result.completeExceptionally(error)) {
+                failed.increment();
+                log.error("Polling of service review {} failed after {} attempts", handle.id, handle.attempts, error);
+            }
+        } else if (handle.result.complete(status)) {
+            (TIMEOUT.equals(status) ? timedOut : completed).increment();
+            if (!TIMEOUT.equals(status)) {
+                recordDecision(handle, decidedAt);
+            }
+        }
+    }
+
+    /**
+     * Teach the adaptive schedule the review's time to decision. Unless a notification said exactly when, the
+     * decision happened between the last check that still saw In Process (or the submission) and this one, so
+     * the midpoint is taken.
+     */
+    private void recordDecision(Handle handle, Instant decidedAt) {
+        (handle.adaptive ? adaptiveAttempts : backoffAttempts).record(handle.attempts);
+        if (handle.submitted == null) {
+            return;
+        }
+        Instant acceptedAt = handle.submitted.getAcceptedAt();
+        long decisionMillis;
+        if (decidedAt != null) {
+            decisionMillis = Duration.between(acceptedAt, decidedAt).toMillis();
+        } else {
+            Instant before = handle.lastInProcessAt != null ? handle.lastInProcessAt : acceptedAt;
+            Instant after = handle.lastPolledAt != null ? handle.lastPolledAt : Instant.now();
+            decisionMillis = Duration.between(acceptedAt, before).toMillis()
+                    + Duration.between(before, after).toMillis() / 2;
+        }
+        adaptiveSchedule.record(handle.submitted.getReviewClass(), Math.max(0, decisionMillis));
+    }
+
+    @PreDestroy
+    public void stop() {
+        timerWheel.close();
+        scheduler.close();
+        workerPool.shutdownNow();
+    }
+
+    /**
+     * The polling of one service review
+     */
+    public static final class Handle {
+        private final String id;
+        private final int maxAttempts;
+        private final long initialDelayMillis;
+        private final boolean useMockScenario;
+        private final AvailityServiceReviewService.SubmittedReview submitted;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private volatile int attempts;
+        private volatile String lastStatus;
+        private volatile String lastError;
+        private volatile Instant lastPolledAt;
+        private volatile Instant nextPollAt;
+        private volatile Instant lastInProcessAt;
+        private volatile boolean adaptive;
+        private volatile HashedTimerWheel.Timeout timeout;
+        private final AtomicInteger generation = new AtomicInteger();
+
+        private Handle(String id, int maxAttempts, long initialDelayMillis, boolean useMockScenario,
+                       AvailityServiceReviewService.SubmittedReview submitted) {
+            this.id = id;
+            this.maxAttempts = maxAttempts;
+            this.initialDelayMillis = initialDelayMillis;
+            this.useMockScenario = useMockScenario;
+            this.submitted = submitted;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Completed with the final status, or TIMEOUT if still in process after the last attempt
+         */
+        public CompletableFuture<String> getResult() {
+            return result;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        /**
+         * Whether polling has finished, failed or been cancelled
+         */
+        public boolean isDone() {
+            return result.isDone();
+        }
+
+        /**
+         * Get the error of the last check, or null if it succeeded
+         */
+        public String getLastError() {
+            return lastError;
+        }
+
+        /**
+         * Get the status from the last successful check, or null before the first one
+         */
+        public String getLastStatus() {
+            return lastStatus;
+        }
+
+        public Instant getLastPolledAt() {
+            return lastPolledAt;
+        }
+
+        /**
+         * Get when the next check is due, or null while a check is running or once polling has finished
+         */
+        public Instant getNextPollAt() {
+            return nextPollAt;
+        }
+
+        /**
+         * Stop polling; the result future is cancelled
+         *
+         * @return Whether polling was still in progress
+         */
+        public boolean cancel() {
+            HashedTimerWheel.Timeout scheduled = timeout;
+            if (scheduled != null) {
+                scheduled.cancel();
+            }
+            return result.cancel(false);
+        }
+    }
+
+    /**
+     * Told about a review's polling after each poll and when it finishes
+     */
+    public interface Listener {
+        void onUpdate(Handle handle);
+    }
+}
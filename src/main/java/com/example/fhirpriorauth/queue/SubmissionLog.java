@@ -0,0 +1,575 @@
+package com.example.fhirpriorauth.queue;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of records in fixed-size, memory-mapped segment files, with group-commit fsync.
+ *
+ * Every record gets a sequence number. Appends are written straight into the mapped segment and a single
+ * flusher thread forces everything written since its last pass to disk in one msync, so concurrent appends
+ * share the cost of each fsync. An append's future completes once its record is durable.
+ *
+ * Consumers acknowledge records by sequence number, in any order. checkpoint() persists the acknowledged
+ * set (a low-water mark plus the acknowledged sequences above it) and deletes segments that hold only
+ * acknowledged records. When the log is reopened, replay() returns the records that were not acknowledged.
+ *
+ * Record layout: int payload length, int CRC32 of the payload, long sequence, payload. A zero length marks
+ * the end of the data in a segment; a record with a bad checksum or sequence (a torn write) ends the log.
+ * Segments after a gap in the sequence cannot be replayed and are renamed to *.seg.orphaned on recovery.
+ */
+public class SubmissionLog implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SubmissionLog.class);
+
+    private static final int HEADER_BYTES = 16;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String QUARANTINE_SUFFIX = ".orphaned";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long commitLingerNanos;
+
+    // Segments by first sequence; all but the last are sealed
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    // Guards appends, the segment list and the records waiting for the flusher
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private Segment active;
+    private long nextSequence;
+    private List<PendingAppend> pending = new ArrayList<>();
+    private boolean closed;
+
+    // Acknowledged records: everything up to ackedThrough, plus the out-of-order ones above it
+    private final Object ackLock = new Object();
+    private long ackedThrough;
+    private final NavigableSet<Long> ackedAbove = new TreeSet<>();
+
+    private final Thread flusher;
+    private final Timer fsyncTimer;
+    private final DistributionSummary commitBatchSize;
+
+    /**
+     * Open (or create) a log in a directory, recovering its segments and last checkpoint
+     *
+     * @param directory The directory holding the segment and checkpoint files
+     * @param segmentBytes The size of each segment file; no record may be larger
+     * @param commitLingerMillis How long the flusher waits for more appends before each fsync
+     * @param meterRegistry Registry for the fsync metrics
+     */
+    public SubmissionLog(Path directory, int segmentBytes, long commitLingerMillis, MeterRegistry meterRegistry) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.commitLingerNanos = TimeUnit.MILLISECONDS.toNanos(commitLingerMillis);
+        this.fsyncTimer = Timer.builder("availity.queue.fsync")
+                .description("Time to force appended submissions to disk")
+                .register(meterRegistry);
+        this.commitBatchSize = DistributionSummary.builder("availity.queue.commit.batch")
+                .description("Submissions made durable by each fsync")
+                .register(meterRegistry);
+
+        try {
+            Files.createDirectories(directory);
+            readCheckpoint();
+            recoverSegments();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open submission log in " + directory, e);
+        }
+
+        this.flusher = new Thread(this::flushLoop, "submission-log-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Append a record
+     *
+     * @param payload The record payload
+     * @return A future completed with the record's sequence number once it is durable on disk
+     */
+    public CompletableFuture<Long> append(byte[] payload) {
+        int recordBytes = HEADER_BYTES + payload.length;
+        if (recordBytes > segmentBytes) {
+            throw new IllegalArgumentException("Record of " + payload.length + " bytes does not fit in a segment");
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Submission log is closed");
+            }
+            // Keep room for the zero length that ends the segment's data
+            if (active.writePosition + recordBytes + Integer.BYTES > segmentBytes) {
+                rollSegment();
+            }
+
+            long sequence = nextSequence++;
+            MappedByteBuffer buffer = active.buffer;
+            int position = active.writePosition;
+            buffer.putInt(position + 4, (int) crc.getValue());
+            buffer.putLong(position + 8, sequence);
+            buffer.put(position + HEADER_BYTES, payload);
+            // Length last, so a record is only readable once all of it is written
+            buffer.putInt(position, payload.length);
+            active.writePosition = position + recordBytes;
+            active.lastSequence = sequence;
+
+            pending.add(new PendingAppend(sequence, future));
+            appended.signal();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to roll submission log segment", e);
+        } finally {
+            lock.unlock();
+        }
+        return future;
+    }
+
+    /**
+     * Mark a record as processed, so it is not replayed after a restart once the next checkpoint is written
+     *
+     * @param sequence The record's sequence number
+     */
+    public void acknowledge(long sequence) {
+        synchronized (ackLock) {
+            if (sequence <= ackedThrough) {
+                return;
+            }
+            ackedAbove.add(sequence);
+            while (!ackedAbove.isEmpty() && ackedAbove.first() == ackedThrough + 1) {
+                ackedThrough = ackedAbove.pollFirst();
+            }
+        }
+    }
+
+    /**
+     * Persist the acknowledged records and delete segments that hold nothing else
+     */
+    public void checkpoint() throws IOException {
+        long through;
+        long[] above;
+        synchronized (ackLock) {
+            through = ackedThrough;
+            above = ackedAbove.stream().mapToLong(Long::longValue).toArray();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + Integer.BYTES + above.length * Long.BYTES + Long.BYTES);
+        buffer.putLong(through).putInt(above.length);
+        for (long sequence : above) {
+            buffer.putLong(sequence);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue()).flip();
+
+        // Write then rename, so a crash leaves either the old or the new checkpoint
+        Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        compact(through);
+    }
+
+    /**
+     * Get the records that have not been acknowledged, oldest first
+     *
+     * @param consumer Called with each record's sequence number and payload
+     */
+    public void replay(BiConsumer<Long, byte[]> consumer) {
+        List<Segment> snapshot;
+        lock.lock();
+        try {
+            snapshot = new ArrayList<>(segments.values());
+        } finally {
+            lock.unlock();
+        }
+
+        for (Segment segment : snapshot) {
+            int position = 0;
+            while (position < segment.writePosition) {
+                int length = segment.buffer.getInt(position);
+                long sequence = segment.buffer.getLong(position + 8);
+                if (!isAcknowledged(sequence)) {
+                    byte[] payload = new byte[length];
+                    segment.buffer.get(position + HEADER_BYTES, payload);
+                    consumer.accept(sequence, payload);
+                }
+                position += HEADER_BYTES + length;
+            }
+        }
+    }
+
+    /**
+     * Get the number of appended records that have not been acknowledged
+     */
+    public long getUnacknowledgedCount() {
+        long appendedThrough;
+        lock.lock();
+        try {
+            appendedThrough = nextSequence - 1;
+        } finally {
+            lock.unlock();
+        }
+        synchronized (ackLock) {
+            return Math.max(0, appendedThrough - ackedThrough - ackedAbove.size());
+        }
+    }
+
+    /**
+     * Get the number of segment files
+     */
+    public int getSegmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flush outstanding appends and close the segment files. The caller should checkpoint first.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        lock.lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.channel.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isAcknowledged(long sequence) {
+        synchronized (ackLock) {
+            return sequence <= ackedThrough || ackedAbove.contains(sequence);
+        }
+    }
+
+    /**
+     * The flusher: waits for appends, lingers briefly so concurrent appends join the batch,
+     * then forces the written range of each segment and completes the batch's futures
+     */
+    private void flushLoop() {
+        while (true) {
+            List<PendingAppend> batch;
+            List<Segment> dirty = new ArrayList<>();
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !closed) {
+                    appended.awaitUninterruptibly();
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                if (commitLingerNanos > 0 && !closed) {
+                    try {
+                        appended.awaitNanos(commitLingerNanos);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                batch = pending;
+                pending = new ArrayList<>();
+                for (Segment segment : segments.values()) {
+                    if (segment.flushedPosition < segment.writePosition) {
+                        dirty.add(segment);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            IOException failure = null;
+            long start = System.nanoTime();
+            try {
+                for (Segment segment : dirty) {
+                    int end;
+                    lock.lock();
+                    try {
+                        end = segment.writePosition;
+                    } finally {
+                        lock.unlock();
+                    }
+                    // Segments only grow; writes past the pending batch are simply flushed early
+                    segment.buffer.force(segment.flushedPosition, end - segment.flushedPosition);
+                    segment.flushedPosition = end;
+                }
+            } catch (RuntimeException e) {
+                failure = new IOException("Failed to force submission log to disk", e);
+            }
+            fsyncTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            commitBatchSize.record(batch.size());
+
+            for (PendingAppend append : batch) {
+                if (failure == null) {
+                    append.future.complete(append.sequence);
+                } else {
+                    append.future.completeExceptionally(failure);
+                }
+            }
+        }
+    }
+
+    /**
+     * Start a new segment after the active one (called with the lock held)
+     */
+    private void rollSegment() throws IOException {
+        active = openSegment(nextSequence, true);
+        segments.put(active.firstSequence, active);
+    }
+
+    /**
+     * Delete sealed segments whose records are all acknowledged
+     */
+    private void compact(long acknowledgedThrough) throws IOException {
+        List<Segment> removed = new ArrayList<>();
+        lock.lock();
+        try {
+            while (segments.size() > 1) {
+                Segment oldest = segments.firstEntry().getValue();
+                if (oldest == active || oldest.lastSequence > acknowledgedThrough) {
+                    break;
+                }
+                segments.pollFirstEntry();
+                removed.add(oldest);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (Segment segment : removed) {
+            segment.channel.close();
+            Files.deleteIfExists(segment.path);
+            log.debug("Deleted submission log segment {}", segment.path.getFileName());
+        }
+    }
+
+    private void readCheckpoint() throws IOException {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        try {
+            long through = buffer.getLong();
+            int count = buffer.getInt();
+            long[] above = new long[count];
+            for (int i = 0; i < count; i++) {
+                above[i] = buffer.getLong();
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), 0, buffer.position());
+            if (crc.getValue() != buffer.getLong()) {
+                throw new IOException("Checksum mismatch");
+            }
+
+            ackedThrough = through;
+            for (long sequence : above) {
+                ackedAbove.add(sequence);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Replaying from the start of the retained segments is safe: submissions are idempotent
+            log.warn("Ignoring unreadable submission log checkpoint: {}", e.getMessage());
+            ackedThrough = 0;
+            ackedAbove.clear();
+        }
+    }
+
+    /**
+     * Open the existing segments, scanning each for the end of its valid records
+     */
+    private void recoverSegments() throws IOException {
+        List<Long> firstSequences = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                firstSequences.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        firstSequences.sort(null);
+
+        long expected = -1;
+        for (int i = 0; i < firstSequences.size(); i++) {
+            long firstSequence = firstSequences.get(i);
+            if (expected != -1 && firstSequence != expected) {
+                log.warn("Submission log segment {} does not follow sequence {}; quarantining later segments",
+                        firstSequence, expected - 1);
+                quarantine(firstSequences.subList(i, firstSequences.size()));
+                break;
+            }
+            Segment segment = openSegment(firstSequence, false);
+            scan(segment);
+            segments.put(firstSequence, segment);
+            expected = segment.lastSequence + 1;
+        }
+
+        nextSequence = Math.max(expected, ackedThrough + 1);
+        if (segments.isEmpty() || segments.lastEntry().getValue().lastSequence + 1 != nextSequence) {
+            rollSegment();
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+
+        if (!firstSequences.isEmpty()) {
+            log.info("Recovered submission log with {} segments, next sequence {}", segments.size(), nextSequence);
+        }
+    }
+
+    /**
+     * Rename segments that cannot be replayed out of the log, so new segments never collide with them
+     * and they stay on disk for inspection
+     */
+    private void quarantine(List<Long> firstSequences) throws IOException {
+        for (long firstSequence : firstSequences) {
+            Path path = segmentPath(firstSequence);
+            Path target = path.resolveSibling(path.getFileName() + QUARANTINE_SUFFIX);
+            if (Files.exists(target)) {
+                // Keep what an earlier recovery quarantined under the same name
+                target = path.resolveSibling(path.getFileName() + "." + System.currentTimeMillis() + QUARANTINE_SUFFIX);
+            }
+            Files.move(path, target);
+            log.warn("Moved submission log segment {} to {}", path, target);
+        }
+    }
+
+    /**
+     * Find the end of a segment's valid records and zero anything after it (e.g. a torn write)
+     */
+    private void scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        long sequence = segment.firstSequence;
+        while (position + HEADER_BYTES <= segmentBytes) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > segmentBytes
+                    || buffer.getLong(position + 8) != sequence) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(position + HEADER_BYTES, payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            position += HEADER_BYTES + length;
+            sequence++;
+        }
+
+        if (position < segmentBytes && buffer.getInt(position) != 0) {
+            log.warn("Discarding torn record at offset {} of submission log segment {}", position,
+                    segment.path.getFileName());
+            byte[] zeros = new byte[Math.min(64 * 1024, segmentBytes - position)];
+            for (int offset = position; offset < segmentBytes; offset += zeros.length) {
+                buffer.put(offset, zeros, 0, Math.min(zeros.length, segmentBytes - offset));
+            }
+            buffer.force();
+        }
+
+        segment.writePosition = position;
+        segment.flushedPosition = position;
+        segment.lastSequence = sequence - 1;
+    }
+
+    private Path segmentPath(long firstSequence) {
+        return directory.resolve(String.format("%020d%s", firstSequence, SEGMENT_SUFFIX));
+    }
+
+    private Segment openSegment(long firstSequence, boolean create) throws IOException {
+        Path path = segmentPath(firstSequence);
+        FileChannel channel = create
+                ? FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        return new Segment(path, channel, buffer, firstSequence);
+    }
+
+    private static final class Segment {
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final long firstSequence;
+        long lastSequence;
+        int writePosition;
+        // Only touched by the flusher (and recovery, before it starts)
+        int flushedPosition;
+
+        Segment(Path path, FileChannel channel, MappedByteBuffer buffer, long firstSequence) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.firstSequence = firstSequence;
+            this.lastSequence = firstSequence - 1;
+        }
+    }
+
+    private static final class PendingAppend {
+        final long sequence;
+        final CompletableFuture<Long> future;
+
+        PendingAppend(long sequence, CompletableFuture<Long> future) {
+            this.sequence = sequence;
+            this.future = future;
+        }
+    }
+}
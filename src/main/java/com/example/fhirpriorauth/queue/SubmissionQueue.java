@@ -0,0 +1,425 @@
+package com.example.fhirpriorauth.queue;
+
+import com.example.fhirpriorauth.model.QueuedSubmission;
+import com.example.fhirpriorauth.resilience.UpstreamErrors;
+import com.example.fhirpriorauth.service.AvailityServiceReviewService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Durable outbound queue of service review submissions.
+ *
+ * A submission is acknowledged to the client once it is in the on-disk SubmissionLog, and a dispatcher then
+ * sends it to Availity asynchronously, with at most max-in-flight submissions outstanding. When Availity accepts
+ * a submission, an outcome record with the service review ID is logged before the submission is acknowledged;
+ * anything still unacknowledged when the JVM stops is replayed on the next startup, except submissions with a
+ * logged outcome. Transient failures (shed locally, network errors, 408/429/5xx) are redelivered with exponential
+ * backoff, up to max-deliveries attempts or until the submission is max-redelivery-age-ms old; after that, and
+ * on a permanent rejection, a failed outcome is logged and the submission is acknowledged (dead-lettered), so
+ * one undeliverable record never holds back the log's compaction.
+ *
+ * Delivery is at-least-once: a crash between Availity accepting a submission and its outcome record reaching the
+ * disk still sends it again on replay. The in-memory idempotency cache is empty after a restart, so such a replay
+ * is only recognized by Availity through the Idempotency-Key header sent with every submission.
+ */
+@Component
+public class SubmissionQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(SubmissionQueue.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final IntConsumer IGNORE_RETRIES = retry -> { };
+
+    @Value("${availity.queue.dir:data/submission-queue}")
+    private String directory;
+
+    @Value("${availity.queue.segment-bytes:16777216}")
+    private int segmentBytes;
+
+    @Value("${availity.queue.commit-linger-ms:1}")
+    private long commitLingerMillis;
+
+    @Value("${availity.queue.max-in-flight:64}")
+    private int maxInFlight;
+
+    @Value("${availity.queue.checkpoint-interval-ms:1000}")
+    private long checkpointIntervalMillis;
+
+    @Value("${availity.queue.redelivery-delay-ms:5000}")
+    private long redeliveryDelayMillis;
+
+    @Value("${availity.queue.max-redelivery-delay-ms:300000}")
+    private long maxRedeliveryDelayMillis;
+
+    // Bound on redelivery: the attempts count restarts with the JVM, the age (since enqueue) does not
+    @Value("${availity.queue.max-deliveries:10}")
+    private int maxDeliveries;
+
+    @Value("${availity.queue.max-redelivery-age-ms:86400000}")
+    private long maxRedeliveryAgeMillis;
+
+    private final AvailityServiceReviewService serviceReviewService;
+    private final MeterRegistry meterRegistry;
+
+    private SubmissionLog submissionLog;
+    private final BlockingQueue<Delivery> ready = new LinkedBlockingQueue<>();
+    private Semaphore inFlight;
+    private Thread dispatcher;
+    private ScheduledExecutorService maintenance;
+    private volatile boolean stopped;
+
+    private final Counter enqueued;
+    private final Counter replayed;
+    private final Counter redelivered;
+    private final Counter delivered;
+    private final Counter failed;
+    private final Counter deadLettered;
+
+    @Autowired
+    public SubmissionQueue(AvailityServiceReviewService serviceReviewService, MeterRegistry meterRegistry) {
+        this.serviceReviewService = serviceReviewService;
+        this.meterRegistry = meterRegistry;
+        this.enqueued = meterRegistry.counter("availity.queue.enqueued");
+        this.replayed = meterRegistry.counter("availity.queue.replayed");
+        this.redelivered = meterRegistry.counter("availity.queue.redelivered");
+        this.delivered = meterRegistry.counter("availity.queue.acked", "result", "submitted");
+        this.failed = meterRegistry.counter("availity.queue.acked", "result", "failed");
+        this.deadLettered = meterRegistry.counter("availity.queue.acked", "result", "dead-lettered");
+    }
+
+    @PostConstruct
+    public void start() {
+        submissionLog = new SubmissionLog(Path.of(directory), segmentBytes, commitLingerMillis, meterRegistry);
+        Gauge.builder("availity.queue.depth", submissionLog, SubmissionLog::getUnacknowledgedCount)
+                .description("Logged submissions not yet accepted or rejected by Availity")
+                .register(meterRegistry);
+        Gauge.builder("availity.queue.segments", submissionLog, SubmissionLog::getSegmentCount)
+                .description("Segment files in the submission log")
+                .register(meterRegistry);
+
+        replay();
+
+        inFlight = new Semaphore(maxInFlight);
+        dispatcher = new Thread(this::dispatch, "submission-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "submission-queue-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::checkpoint, checkpointIntervalMillis, checkpointIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Durably queue a submission for delivery to Availity
+     *
+     * @param submission The submission
+     * @return The receipt, whose futures complete when the submission is logged and when its outcome is known
+     */
+    public Receipt enqueue(QueuedSubmission submission) {
+        return enqueue(submission, IGNORE_RETRIES);
+    }
+
+    /**
+     * Durably queue a submission for delivery to Availity, reporting retries of the upstream call
+     *
+     * @param submission The submission
+     * @param onRetry Told the retry number each time a transient failure of the upstream call is retried
+     * @return The receipt, whose futures complete when the submission is logged and when its outcome is known
+     */
+    public Receipt enqueue(QueuedSubmission submission, IntConsumer onRetry) {
+        CompletableFuture<String> submitted = new CompletableFuture<>();
+        CompletableFuture<String> outcome = new CompletableFuture<>();
+        if (submission.getEnqueuedAt() == null) {
+            submission.setEnqueuedAt(System.currentTimeMillis());
+        }
+        CompletableFuture<Long> logged;
+        try {
+            logged = submissionLog.append(objectMapper.writeValueAsBytes(submission));
+        } catch (IOException | RuntimeException e) {
+            logged = CompletableFuture.failedFuture(e);
+        }
+
+        logged.whenComplete((sequence, error) -> {
+            if (error != null) {
+                submitted.completeExceptionally(error);
+                outcome.completeExceptionally(error);
+                return;
+            }
+            enqueued.increment();
+            ready.add(new Delivery(sequence, submission, onRetry, submitted, outcome));
+        });
+        return new Receipt(logged, submitted, outcome);
+    }
+
+    /**
+     * Queue the records not acknowledged before the last shutdown for delivery, skipping submissions whose
+     * outcome was logged (Availity already accepted them, or they failed for good)
+     */
+    private void replay() {
+        Map<Long, QueuedSubmission> submissions = new LinkedHashMap<>();
+        Map<Long, Long> outcomes = new HashMap<>();
+        submissionLog.replay((sequence, payload) -> {
+            try {
+                QueuedSubmission record = objectMapper.readValue(payload, QueuedSubmission.class);
+                if (record.getDeliveredSequence() != null) {
+                    outcomes.put(record.getDeliveredSequence(), sequence);
+                } else {
+                    submissions.put(sequence, record);
+                }
+            } catch (IOException e) {
+                log.error("Dropping unreadable queued submission {}", sequence, e);
+                submissionLog.acknowledge(sequence);
+            }
+        });
+
+        // Submission first, so a checkpoint in between never keeps a submission without its outcome
+        for (Map.Entry<Long, QueuedSubmission> entry : submissions.entrySet()) {
+            Long outcome = outcomes.remove(entry.getKey());
+            if (outcome != null) {
+                submissionLog.acknowledge(entry.getKey());
+                submissionLog.acknowledge(outcome);
+                continue;
+            }
+            ready.add(new Delivery(entry.getKey(), entry.getValue(), IGNORE_RETRIES, new CompletableFuture<>(),
+                    new CompletableFuture<>()));
+            replayed.increment();
+        }
+        // Outcomes whose submission was acknowledged before the stop
+        outcomes.values().forEach(submissionLog::acknowledge);
+
+        if (!ready.isEmpty()) {
+            log.info("Replaying {} queued submissions from {}", ready.size(), directory);
+        }
+    }
+
+    /**
+     * Dispatcher loop: start the delivery of queued submissions, at most max-in-flight at a time, until the
+     * queue is stopped. Only this thread waits for a permit; the deliveries themselves run asynchronously.
+     */
+    private void dispatch() {
+        while (!stopped) {
+            Delivery delivery;
+            try {
+                delivery = ready.poll(1, TimeUnit.SECONDS);
+                if (delivery == null) {
+                    continue;
+                }
+                while (!inFlight.tryAcquire(1, TimeUnit.SECONDS)) {
+                    if (stopped) {
+                        // Stays unacknowledged, so it is replayed on the next start
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            deliver(delivery).whenComplete((result, error) -> inFlight.release());
+        }
+    }
+
+    /**
+     * Send one submission to Availity and record the outcome
+     *
+     * @return A future completed once the delivery has been handled
+     */
+    private CompletableFuture<?> deliver(Delivery delivery) {
+        QueuedSubmission submission = delivery.submission;
+        delivery.attempts++;
+        CompletableFuture<String> call;
+        try {
+            call = submission.getAvailityPayload() != null
+                    ? serviceReviewService.submitServiceReviewAsync(submission.getAvailityPayload(),
+                            submission.getIdempotencyKey(), delivery.onRetry)
+                    : serviceReviewService.submitServiceReviewAsync(submission.isUseMockData(),
+                            submission.getIdempotencyKey());
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+
+        return call.handle((resourceId, error) -> {
+            if (error == null) {
+                return recordOutcome(delivery, resourceId, null);
+            }
+            Throwable cause = UpstreamErrors.unwrap(error);
+            if (stopped) {
+                // Stays unacknowledged, so it is replayed on the next start
+                return CompletableFuture.completedFuture(null);
+            }
+            if (!UpstreamErrors.isTransient(cause)) {
+                log.error("Queued submission {} rejected after {} deliveries", delivery.sequence, delivery.attempts,
+                        cause);
+                return recordOutcome(delivery, null, cause);
+            }
+
+            // The caller stops waiting now; the submission itself keeps being redelivered
+            delivery.submitted.completeExceptionally(cause);
+            long age = System.currentTimeMillis() - delivery.queuedAtMillis;
+            if (delivery.attempts >= maxDeliveries || age >= maxRedeliveryAgeMillis) {
+                log.error("Queued submission {} not delivered after {} attempts over {} ms; dead-lettering it",
+                        delivery.sequence, delivery.attempts, age, cause);
+                return recordOutcome(delivery, null, cause);
+            }
+            long delay = redeliveryDelay(delivery.attempts);
+            log.warn("Queued submission {} not delivered ({}); redelivering in {} ms", delivery.sequence,
+                    cause.getMessage(), delay);
+            redelivered.increment();
+            maintenance.schedule(() -> ready.add(delivery), delay, TimeUnit.MILLISECONDS);
+            return CompletableFuture.completedFuture(null);
+        }).thenCompose(done -> done);
+    }
+
+    /**
+     * Log the outcome of a submission, then acknowledge it: the service review ID when Availity accepted it,
+     * or the failure when it was rejected or dead-lettered
+     */
+    private CompletableFuture<?> recordOutcome(Delivery delivery, String resourceId, Throwable failure) {
+        QueuedSubmission record = failure == null
+                ? QueuedSubmission.forOutcome(delivery.sequence, resourceId)
+                : QueuedSubmission.forFailure(delivery.sequence, String.valueOf(failure.getMessage()));
+        CompletableFuture<Long> logged;
+        try {
+            logged = submissionLog.append(objectMapper.writeValueAsBytes(record));
+        } catch (IOException | RuntimeException e) {
+            logged = CompletableFuture.failedFuture(e);
+        }
+        return logged.whenComplete((outcomeSequence, error) -> {
+            if (error != null) {
+                // The acknowledgement below still covers a clean stop; only a crash before the next
+                // checkpoint sends the submission again
+                log.warn("Failed to log the outcome of queued submission {}", delivery.sequence, error);
+            }
+            submissionLog.acknowledge(delivery.sequence);
+            if (outcomeSequence != null) {
+                submissionLog.acknowledge(outcomeSequence);
+            }
+            if (failure == null) {
+                delivered.increment();
+                delivery.submitted.complete(resourceId);
+                delivery.outcome.complete(resourceId);
+            } else {
+                (UpstreamErrors.isTransient(failure) ? deadLettered : failed).increment();
+                delivery.submitted.completeExceptionally(failure);
+                delivery.outcome.completeExceptionally(failure);
+            }
+        });
+    }
+
+    /**
+     * Get the delay before redelivering a submission: redelivery-delay-ms doubled per failed delivery,
+     * up to max-redelivery-delay-ms
+     */
+    private long redeliveryDelay(int attempts) {
+        double delay = redeliveryDelayMillis * Math.pow(2, Math.min(attempts - 1, 30));
+        return (long) Math.min(delay, maxRedeliveryDelayMillis);
+    }
+
+    private void checkpoint() {
+        try {
+            submissionLog.checkpoint();
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to checkpoint the submission log", e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        stopped = true;
+        dispatcher.join(TimeUnit.SECONDS.toMillis(2));
+        // Let deliveries in flight record their outcome
+        if (inFlight.tryAcquire(maxInFlight, 10, TimeUnit.SECONDS)) {
+            inFlight.release(maxInFlight);
+        }
+        maintenance.shutdownNow();
+
+        // Submissions still queued or in flight stay unacknowledged and are replayed on the next start
+        submissionLog.checkpoint();
+        submissionLog.close();
+    }
+
+    /**
+     * The futures of a queued submission
+     */
+    public static final class Receipt {
+        private final CompletableFuture<Long> logged;
+        private final CompletableFuture<String> submitted;
+        private final CompletableFuture<String> outcome;
+
+        Receipt(CompletableFuture<Long> logged, CompletableFuture<String> submitted,
+                CompletableFuture<String> outcome) {
+            this.logged = logged;
+            this.submitted = submitted;
+            this.outcome = outcome;
+        }
+
+        /**
+         * Completed with the submission's sequence number once it is durably logged
+         */
+        public CompletableFuture<Long> getLogged() {
+            return logged;
+        }
+
+        /**
+         * Completed with the service review ID once Availity accepts the submission, or failed as soon as one
+         * delivery fails, for callers that wait for the answer; a transient failure is still redelivered
+         */
+        public CompletableFuture<String> getSubmitted() {
+            return submitted;
+        }
+
+        /**
+         * Completed with the service review ID once Availity accepts the submission, or failed once it is
+         * rejected or dead-lettered
+         */
+        public CompletableFuture<String> getOutcome() {
+            return outcome;
+        }
+    }
+
+    private static final class Delivery {
+        final long sequence;
+        final QueuedSubmission submission;
+        final IntConsumer onRetry;
+        final CompletableFuture<String> submitted;
+        final CompletableFuture<String> outcome;
+        final long queuedAtMillis;
+        int attempts;
+
+        Delivery(long sequence, QueuedSubmission submission, IntConsumer onRetry, CompletableFuture<String> submitted,
+                 CompletableFuture<String> outcome) {
+            this.sequence = sequence;
+            this.submission = submission;
+            this.onRetry = onRetry;
+            this.submitted = submitted;
+            this.outcome = outcome;
+            // Records logged before enqueuedAt existed are aged from their replay
+            this.queuedAtMillis = submission.getEnqueuedAt() != null
+                    ? submission.getEnqueuedAt() : System.currentTimeMillis();
+        }
+    }
+}
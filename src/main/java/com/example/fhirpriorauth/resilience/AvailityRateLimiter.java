@@ -0,0 +1,330 @@
+package com.example.fhirpriorauth.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token-bucket rate limiter in front of Availity calls, with one bucket per payer and endpoint class.
+ *
+ * A call that finds the bucket empty is not failed: it reserves the next token and is admitted when
+ * that token is due, as long as it would wait no longer than the configured maximum and the queue
+ * for the bucket is not full. Waiting calls hold no thread; their futures are completed by a timer.
+ *
+ * Payer IDs come from request data, so buckets are bounded: a bucket unused for idle-eviction-ms (and by then
+ * full again, so forgetting it changes nothing) is removed along with its meters, and once max-buckets exist,
+ * calls for further payers share one "other" bucket per endpoint class.
+ */
+@Component
+public class AvailityRateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(AvailityRateLimiter.class);
+
+    /** Endpoint class for calls that create resources (service review submissions, FHIR creates and updates) */
+    public static final String SUBMIT = "submit";
+
+    /** Endpoint class for calls that read resources (service review status, FHIR reads and searches) */
+    public static final String STATUS = "status";
+
+    private static final String DEFAULT_PAYER = "default";
+
+    // Payer of the shared bucket used once max-buckets buckets exist
+    private static final String OTHER_PAYER = "other";
+
+    @Value("${availity.ratelimit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${availity.ratelimit.submit.rate-per-second:5}")
+    private double submitRatePerSecond;
+
+    @Value("${availity.ratelimit.submit.burst:10}")
+    private int submitBurst;
+
+    @Value("${availity.ratelimit.status.rate-per-second:10}")
+    private double statusRatePerSecond;
+
+    @Value("${availity.ratelimit.status.burst:20}")
+    private int statusBurst;
+
+    @Value("${availity.ratelimit.max-wait-ms:5000}")
+    private long maxWaitMillis;
+
+    @Value("${availity.ratelimit.max-queue:100}")
+    private int maxQueue;
+
+    @Value("${availity.ratelimit.max-buckets:1000}")
+    private int maxBuckets;
+
+    @Value("${availity.ratelimit.idle-eviction-ms:600000}")
+    private long idleEvictionMillis;
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Timer waitTimer;
+
+    // Completes the futures of queued calls when their token is due
+    private final ScheduledExecutorService admissionScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "rate-limiter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public AvailityRateLimiter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.waitTimer = Timer.builder("availity.ratelimit.wait")
+                .description("Time calls spent queued by the rate limiter")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        admissionScheduler.scheduleWithFixedDelay(this::evictIdleBuckets, idleEvictionMillis, idleEvictionMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Wait for permission to make a call, without blocking the calling thread
+     *
+     * @param endpoint The endpoint class, SUBMIT or STATUS
+     * @param payerId The payer the call is for, or null for calls not tied to a payer
+     * @return A future completed when the call may proceed, or failed with RateLimitExceededException
+     */
+    public CompletableFuture<Void> acquire(String endpoint, String payerId) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        String payer = payerId != null ? payerId : DEFAULT_PAYER;
+        TokenBucket bucket;
+        long waitNanos;
+        do {
+            // Retried if the bucket was evicted between the lookup and the reservation
+            bucket = bucketFor(endpoint, payer);
+            waitNanos = bucket.reserve();
+        } while (waitNanos == TokenBucket.EVICTED);
+        if (waitNanos == 0) {
+            bucket.admitted.increment();
+            return CompletableFuture.completedFuture(null);
+        }
+        if (waitNanos < 0) {
+            bucket.rejected.increment();
+            log.warn("Rate limit for {} calls to payer {} exceeded; rejecting call", endpoint, payer);
+            return CompletableFuture.failedFuture(new RateLimitExceededException(endpoint, payer,
+                    "Rate limit for " + endpoint + " calls to payer " + payer + " exceeded"));
+        }
+
+        bucket.queued.increment();
+        waitTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+        log.debug("Queueing {} call to payer {} for {} ms", endpoint, payer, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+
+        TokenBucket reserved = bucket;
+        CompletableFuture<Void> admission = new CompletableFuture<>();
+        admissionScheduler.schedule(() -> {
+            reserved.dequeue();
+            admission.complete(null);
+        }, waitNanos, TimeUnit.NANOSECONDS);
+        return admission;
+    }
+
+    /**
+     * Wait for permission to make a call, blocking the calling thread (for synchronous clients such as HAPI)
+     *
+     * @param endpoint The endpoint class, SUBMIT or STATUS
+     * @param payerId The payer the call is for, or null for calls not tied to a payer
+     */
+    public void acquireBlocking(String endpoint, String payerId) {
+        try {
+            acquire(endpoint, payerId).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Get the bucket of a payer and endpoint class, creating it, or falling back to the shared "other" bucket
+     * once max-buckets exist
+     */
+    private TokenBucket bucketFor(String endpoint, String payer) {
+        TokenBucket bucket = buckets.get(endpoint + "|" + payer);
+        if (bucket != null) {
+            return bucket;
+        }
+        String bucketPayer = buckets.size() < maxBuckets ? payer : OTHER_PAYER;
+        return buckets.computeIfAbsent(endpoint + "|" + bucketPayer, key -> createBucket(endpoint, bucketPayer));
+    }
+
+    /**
+     * Remove the buckets (and meters) of payers not called for idle-eviction-ms
+     */
+    private void evictIdleBuckets() {
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(idleEvictionMillis);
+        int evicted = 0;
+        for (Map.Entry<String, TokenBucket> entry : buckets.entrySet()) {
+            TokenBucket bucket = entry.getValue();
+            if (bucket.evictIfIdle(idleNanos) && buckets.remove(entry.getKey(), bucket)) {
+                bucket.meters.forEach(meterRegistry::remove);
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            log.debug("Evicted {} idle rate limit buckets; {} remain", evicted, buckets.size());
+        }
+    }
+
+    private TokenBucket createBucket(String endpoint, String payer) {
+        boolean submit = SUBMIT.equals(endpoint);
+        TokenBucket bucket = new TokenBucket(
+                submit ? submitRatePerSecond : statusRatePerSecond,
+                submit ? submitBurst : statusBurst,
+                TimeUnit.MILLISECONDS.toNanos(maxWaitMillis),
+                maxQueue);
+
+        bucket.meters.add(Gauge.builder("availity.ratelimit.tokens", bucket, TokenBucket::availableTokens)
+                .description("Tokens currently available in the bucket (negative when calls are queued)")
+                .tag("endpoint", endpoint)
+                .tag("payer", payer)
+                .register(meterRegistry));
+        bucket.meters.add(Gauge.builder("availity.ratelimit.queue", bucket, TokenBucket::queueDepth)
+                .description("Calls waiting for a token")
+                .tag("endpoint", endpoint)
+                .tag("payer", payer)
+                .register(meterRegistry));
+        bucket.admitted = requestCounter(endpoint, payer, "admitted");
+        bucket.queued = requestCounter(endpoint, payer, "queued");
+        bucket.rejected = requestCounter(endpoint, payer, "rejected");
+        bucket.meters.add(bucket.admitted);
+        bucket.meters.add(bucket.queued);
+        bucket.meters.add(bucket.rejected);
+        return bucket;
+    }
+
+    private Counter requestCounter(String endpoint, String payer, String result) {
+        return Counter.builder("availity.ratelimit.requests")
+                .description("Calls admitted immediately, queued, or rejected by the rate limiter")
+                .tag("endpoint", endpoint)
+                .tag("payer", payer)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        admissionScheduler.shutdownNow();
+    }
+
+    /**
+     * A token bucket where calls may reserve tokens ahead of time, letting the token count go negative.
+     * The wait for a reservation is the time until the count is back at zero.
+     */
+    static final class TokenBucket {
+        // Returned by reserve once the bucket has been evicted; the caller looks the bucket up again
+        static final long EVICTED = -2;
+
+        private final double ratePerNano;
+        private final double capacity;
+        private final long maxWaitNanos;
+        private final int maxQueue;
+
+        private double tokens;
+        private long lastRefillNanos;
+        private int queueDepth;
+        private long lastReservedNanos;
+        private boolean evicted;
+
+        private final List<Meter> meters = new ArrayList<>();
+        private Counter admitted;
+        private Counter queued;
+        private Counter rejected;
+
+        TokenBucket(double ratePerSecond, int capacity, long maxWaitNanos, int maxQueue) {
+            this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.maxWaitNanos = maxWaitNanos;
+            this.maxQueue = maxQueue;
+            this.tokens = capacity;
+            this.lastRefillNanos = System.nanoTime();
+            this.lastReservedNanos = lastRefillNanos;
+        }
+
+        /**
+         * Take a token, or reserve the next one
+         *
+         * @return 0 if a token was taken, the wait in nanoseconds if one was reserved, -1 if the call is rejected,
+         *         or EVICTED if the bucket is no longer in use
+         */
+        synchronized long reserve() {
+            if (evicted) {
+                return EVICTED;
+            }
+            refill();
+            lastReservedNanos = lastRefillNanos;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+
+            long waitNanos = (long) Math.ceil((1 - tokens) / ratePerNano);
+            if (waitNanos > maxWaitNanos || queueDepth >= maxQueue) {
+                return -1;
+            }
+            tokens -= 1;
+            queueDepth++;
+            return waitNanos;
+        }
+
+        /**
+         * Mark the bucket evicted if nothing reserved a token for idleNanos and it is full again
+         *
+         * @return Whether the bucket is now evicted
+         */
+        synchronized boolean evictIfIdle(long idleNanos) {
+            refill();
+            if (queueDepth == 0 && tokens >= capacity && lastRefillNanos - lastReservedNanos >= idleNanos) {
+                evicted = true;
+            }
+            return evicted;
+        }
+
+        synchronized void dequeue() {
+            queueDepth--;
+        }
+
+        synchronized double availableTokens() {
+            refill();
+            return tokens;
+        }
+
+        synchronized int queueDepth() {
+            return queueDepth;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * ratePerNano);
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.fhirpriorauth.resilience;
+
+/**
+ * Thrown when a call to Availity cannot be admitted by the rate limiter within the maximum queueing time
+ */
+public class RateLimitExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String endpoint;
+    private final String payerId;
+
+    public RateLimitExceededException(String endpoint, String payerId, String message) {
+        super(message);
+        this.endpoint = endpoint;
+        this.payerId = payerId;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public String getPayerId() {
+        return payerId;
+    }
+}
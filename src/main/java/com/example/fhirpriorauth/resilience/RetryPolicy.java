@@ -0,0 +1,291 @@
+package com.example.fhirpriorauth.resilience;
+
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Retries transient upstream failures with exponential backoff and full jitter, honouring Retry-After,
+ * within a total deadline per call.
+ *
+ * Which failures are retried depends on whether the call is idempotent:
+ * <ul>
+ *   <li>408, 429 and 503 responses, and connections that could not be opened, mean the request was not
+ *       processed, so they are retried for every call</li>
+ *   <li>500, 502 and 504 responses, timeouts and other I/O errors may come after the request was processed,
+ *       so they are only retried for idempotent calls (reads, or writes that are safe to repeat)</li>
+ * </ul>
+ * Calls rejected locally by the rate limiter, circuit breaker or concurrency limit are never retried.
+ */
+@Component
+public class RetryPolicy {
+
+    private static final Logger log = LoggerFactory.getLogger(RetryPolicy.class);
+
+    @Value("${availity.retry.max-attempts:4}")
+    private int maxAttempts;
+
+    @Value("${availity.retry.initial-delay-ms:200}")
+    private long initialDelayMillis;
+
+    @Value("${availity.retry.max-delay-ms:5000}")
+    private long maxDelayMillis;
+
+    @Value("${availity.retry.deadline-ms:20000}")
+    private long deadlineMillis;
+
+    private final MeterRegistry meterRegistry;
+
+    // Runs the next attempt of async calls once their backoff has elapsed
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "upstream-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public RetryPolicy(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Run an async HTTP call, retrying transient failures
+     *
+     * @param upstream The upstream name, for metrics and logs
+     * @param idempotent Whether the call is safe to repeat after the upstream may have processed it
+     * @param call Starts one attempt
+     * @param onRetry Told the retry number (1, 2, ...) before each retry
+     * @return The response of the last attempt, or the failure of the last attempt
+     */
+    public <T> CompletableFuture<HttpResponse<T>> executeAsync(String upstream, boolean idempotent,
+                                                               Supplier<CompletableFuture<HttpResponse<T>>> call,
+                                                               IntConsumer onRetry) {
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        attempt(upstream, idempotent, call, onRetry, 1, deadline, result);
+        return result;
+    }
+
+    private <T> void attempt(String upstream, boolean idempotent, Supplier<CompletableFuture<HttpResponse<T>>> call,
+                             IntConsumer onRetry, int attempt, long deadline, CompletableFuture<HttpResponse<T>> result) {
+        CompletableFuture<HttpResponse<T>> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        future.whenComplete((response, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            String reason = cause != null ? retryableReason(cause, idempotent)
+                    : retryableStatus(response.statusCode(), idempotent) ? String.valueOf(response.statusCode()) : null;
+            Long retryAfter = response != null ? retryAfterMillis(response.headers().firstValue("Retry-After")) : null;
+
+            long delay = reason != null ? nextDelay(attempt, retryAfter, deadline) : -1;
+            if (delay < 0) {
+                if (cause != null) {
+                    result.completeExceptionally(cause);
+                } else {
+                    result.complete(response);
+                }
+                return;
+            }
+
+            recordRetry(upstream, reason);
+            log.warn("Retrying {} call after {} (attempt {} of {}) in {} ms", upstream, reason, attempt + 1, maxAttempts, delay);
+            discard(response);
+            onRetry.accept(attempt);
+            try {
+                retryScheduler.schedule(() -> attempt(upstream, idempotent, call, onRetry, attempt + 1, deadline, result),
+                        delay, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                // Shutting down
+                result.completeExceptionally(cause != null ? cause : e);
+            }
+        });
+    }
+
+    /**
+     * Run a blocking FHIR client call, retrying transient failures (the calling thread sleeps between attempts)
+     *
+     * @param upstream The upstream name, for metrics and logs
+     * @param idempotent Whether the call is safe to repeat after the upstream may have processed it
+     * @param call One attempt
+     * @return The result of the first successful attempt
+     */
+    public <T> T execute(String upstream, boolean idempotent, Supplier<T> call) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.get();
+            } catch (RuntimeException e) {
+                String reason = retryableReason(e, idempotent);
+                Long retryAfter = e instanceof BaseServerResponseException
+                        ? retryAfterMillis(headerValue(((BaseServerResponseException) e).getResponseHeaders(), "Retry-After"))
+                        : null;
+                long delay = reason != null ? nextDelay(attempt, retryAfter, deadline) : -1;
+                if (delay < 0) {
+                    throw e;
+                }
+
+                recordRetry(upstream, reason);
+                log.warn("Retrying {} call after {} (attempt {} of {}) in {} ms", upstream, reason, attempt + 1, maxAttempts, delay);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Release a response that will not be read, closing its body if it is a stream so the connection is freed
+     *
+     * @param response The response, or null
+     */
+    public static void discard(HttpResponse<?> response) {
+        if (response != null && response.body() instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) response.body()).close();
+            } catch (Exception e) {
+                log.debug("Failed to close discarded response body", e);
+            }
+        }
+    }
+
+    /**
+     * Whether a response status is worth retrying
+     */
+    private static boolean retryableStatus(int status, boolean idempotent) {
+        switch (status) {
+            case 408:
+            case 429:
+            case 503:
+                return true;
+            case 500:
+            case 502:
+            case 504:
+                return idempotent;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Get the reason to retry after an exception, or null if it should not be retried
+     */
+    private static String retryableReason(Throwable error, boolean idempotent) {
+        if (error instanceof RateLimitExceededException || error instanceof UpstreamUnavailableException) {
+            return null;
+        }
+        if (error instanceof BaseServerResponseException && ((BaseServerResponseException) error).getStatusCode() > 0) {
+            int status = ((BaseServerResponseException) error).getStatusCode();
+            return retryableStatus(status, idempotent) ? String.valueOf(status) : null;
+        }
+
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof ConnectException) {
+                return "connect failure";
+            }
+            if (t instanceof HttpTimeoutException || t instanceof java.net.SocketTimeoutException) {
+                return idempotent ? "timeout" : null;
+            }
+            if (t instanceof IOException) {
+                return idempotent ? "I/O error" : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the delay before the next attempt, or -1 if there should be no further attempt
+     *
+     * @param attempt The attempt that just failed (1-based)
+     * @param retryAfterMillis The delay the upstream asked for, if any
+     * @param deadline The System.nanoTime() by which the call must be done
+     */
+    private long nextDelay(int attempt, Long retryAfterMillis, long deadline) {
+        if (attempt >= maxAttempts) {
+            return -1;
+        }
+
+        long delay;
+        if (retryAfterMillis != null) {
+            delay = retryAfterMillis;
+        } else {
+            // Full jitter: anywhere between zero and the exponential backoff cap
+            long cap = Math.min(maxDelayMillis, initialDelayMillis << Math.min(attempt - 1, 20));
+            delay = ThreadLocalRandom.current().nextLong(cap + 1);
+        }
+
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        return delay < remaining ? delay : -1;
+    }
+
+    /**
+     * Parse a Retry-After header, given either in seconds or as an HTTP date
+     */
+    static Long retryAfterMillis(Optional<String> header) {
+        if (header.isEmpty() || header.get().isBlank()) {
+            return null;
+        }
+        String value = header.get().trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+            } catch (RuntimeException ignored) {
+                return null;
+            }
+        }
+    }
+
+    private static Optional<String> headerValue(Map<String, List<String>> headers, String name) {
+        if (headers == null) {
+            return Optional.empty();
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isEmpty()) {
+                return Optional.of(header.getValue().get(0));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void recordRetry(String upstream, String reason) {
+        meterRegistry.counter("availity.http.retries", "upstream", upstream, "reason", reason).increment();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.fhirpriorauth.resilience;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Maps failed upstream calls to the HTTP status returned to our own clients
+ */
+public final class UpstreamErrors {
+
+    private UpstreamErrors() {
+    }
+
+    /**
+     * Get the response status for a failed call: 429 when the rate limiter turned it away,
+     * 503 when the upstream's circuit breaker or concurrency limit did, and 500 otherwise
+     *
+     * @param error The failure, possibly wrapped in CompletionException or RuntimeException
+     * @return The HTTP status code
+     */
+    public static int httpStatusFor(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof RateLimitExceededException) {
+                return 429;
+            }
+            if (t instanceof UpstreamUnavailableException) {
+                return 503;
+            }
+        }
+        return 500;
+    }
+
+    /**
+     * Whether a failed call is worth sending again later: it was shed locally (rate limiter, circuit breaker,
+     * concurrency limit), failed on the network, or the upstream answered 408, 429 or 5xx. Other responses
+     * (e.g. a 400 for an invalid payload) and local errors will fail the same way again. Only calls that are
+     * safe to repeat should be sent again on a 5xx; submissions are, as they carry an Idempotency-Key.
+     *
+     * @param error The failure, possibly wrapped
+     * @return Whether the failure is transient
+     */
+    public static boolean isTransient(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof RateLimitExceededException || t instanceof UpstreamUnavailableException
+                    || t instanceof IOException) {
+                return true;
+            }
+            if (t instanceof UpstreamResponseException) {
+                int status = ((UpstreamResponseException) t).getStatusCode();
+                return status == 408 || status == 429 || status >= 500;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Unwrap the CompletionException an async stage wraps failures in
+     *
+     * @param error The failure
+     * @return The underlying cause
+     */
+    public static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
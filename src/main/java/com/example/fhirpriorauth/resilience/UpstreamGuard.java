@@ -0,0 +1,303 @@
+package com.example.fhirpriorauth.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Adaptive concurrency limit and circuit breaker for one upstream (e.g. the token endpoint).
+ *
+ * Every call takes a permit before it is sent and reports its outcome when it completes. Calls are
+ * rejected with UpstreamUnavailableException instead of queueing when the limit is reached or the
+ * circuit is open, so a slow upstream sheds load rather than tying up request threads.
+ */
+public class UpstreamGuard {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamGuard.class);
+
+    // Weight of each new sample in the smoothed latency baseline (about the last 20 calls)
+    private static final double BASELINE_SMOOTHING = 0.05;
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final String upstream;
+    private final ResilienceProperties.Concurrency concurrency;
+    private final ResilienceProperties.CircuitBreaker breaker;
+
+    // Concurrency limit state
+    private double limit;
+    private int inFlight;
+    private double baselineRttNanos;
+
+    // Circuit breaker state; outcomes is a ring buffer of the last window-size calls (true = failure)
+    private State state = State.CLOSED;
+    private final boolean[] outcomes;
+    private int outcomeCount;
+    private int outcomeIndex;
+    private int failureCount;
+    private long openedAtNanos;
+    private int probesInFlight;
+    private int probesSucceeded;
+
+    private final Counter rejectedByLimit;
+    private final Counter rejectedByCircuit;
+
+    public UpstreamGuard(String upstream, ResilienceProperties properties, MeterRegistry meterRegistry) {
+        this.upstream = upstream;
+        this.concurrency = properties.getConcurrency();
+        this.breaker = properties.getCircuitBreaker();
+        this.limit = concurrency.getInitialLimit();
+        this.outcomes = new boolean[breaker.getWindowSize()];
+
+        Gauge.builder("availity.upstream.concurrency.limit", this, UpstreamGuard::getLimit)
+                .description("Current adaptive concurrency limit")
+                .tag("upstream", upstream)
+                .register(meterRegistry);
+        Gauge.builder("availity.upstream.concurrency.inflight", this, UpstreamGuard::getInFlight)
+                .description("Calls currently in flight")
+                .tag("upstream", upstream)
+                .register(meterRegistry);
+        Gauge.builder("availity.upstream.circuit.state", this, guard -> guard.getState().ordinal())
+                .description("Circuit breaker state: 0 closed, 1 half-open, 2 open")
+                .tag("upstream", upstream)
+                .register(meterRegistry);
+        this.rejectedByLimit = Counter.builder("availity.upstream.rejected")
+                .description("Calls rejected without reaching the upstream")
+                .tag("upstream", upstream)
+                .tag("reason", "limit")
+                .register(meterRegistry);
+        this.rejectedByCircuit = Counter.builder("availity.upstream.rejected")
+                .description("Calls rejected without reaching the upstream")
+                .tag("upstream", upstream)
+                .tag("reason", "open")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Take a permit for a call
+     *
+     * @return The permit; its outcome must be reported exactly once
+     * @throws UpstreamUnavailableException If the circuit is open or the concurrency limit is reached
+     */
+    public Permit acquire() {
+        boolean probe;
+        synchronized (this) {
+            if (state == State.OPEN && System.nanoTime() - openedAtNanos >= TimeUnit.MILLISECONDS.toNanos(breaker.getOpenDurationMs())) {
+                transitionTo(State.HALF_OPEN);
+            }
+
+            if (state == State.OPEN || (state == State.HALF_OPEN && probesInFlight >= breaker.getHalfOpenProbes())) {
+                rejectedByCircuit.increment();
+                throw new UpstreamUnavailableException(upstream, UpstreamUnavailableException.Reason.CIRCUIT_OPEN,
+                        "Circuit breaker for " + upstream + " is open; not calling the upstream");
+            }
+            if (inFlight >= (int) limit) {
+                rejectedByLimit.increment();
+                throw new UpstreamUnavailableException(upstream, UpstreamUnavailableException.Reason.CONCURRENCY_LIMIT,
+                        "Concurrency limit of " + (int) limit + " calls to " + upstream + " reached");
+            }
+
+            probe = state == State.HALF_OPEN;
+            if (probe) {
+                probesInFlight++;
+            }
+            inFlight++;
+        }
+        return new Permit(probe);
+    }
+
+    /**
+     * Run an async call under a permit
+     *
+     * @param call Starts the call
+     * @param isFailure Whether a completed result counts as a failure (e.g. a 5xx response)
+     * @return The call's future, or a future failed with UpstreamUnavailableException
+     */
+    public <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> call, Predicate<? super T> isFailure) {
+        Permit permit;
+        try {
+            permit = acquire();
+        } catch (UpstreamUnavailableException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            permit.onFailure();
+            return CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((result, error) -> {
+            if (error != null || isFailure.test(result)) {
+                permit.onFailure();
+            } else {
+                permit.onSuccess();
+            }
+        });
+    }
+
+    /**
+     * Run a blocking call under a permit
+     *
+     * @param call The call
+     * @param isFailure Whether an exception thrown by the call counts as an upstream failure
+     *                  (client errors such as a 404 do not)
+     * @return The call's result
+     */
+    public <T> T execute(Supplier<T> call, Predicate<RuntimeException> isFailure) {
+        Permit permit = acquire();
+        try {
+            T result = call.get();
+            permit.onSuccess();
+            return result;
+        } catch (RuntimeException e) {
+            if (isFailure.test(e)) {
+                permit.onFailure();
+            } else {
+                permit.onSuccess();
+            }
+            throw e;
+        }
+    }
+
+    public synchronized double getLimit() {
+        return limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public String getUpstream() {
+        return upstream;
+    }
+
+    private synchronized void complete(Permit permit, boolean failure) {
+        inFlight--;
+        updateLimit(System.nanoTime() - permit.startNanos, failure);
+
+        if (permit.probe) {
+            probesInFlight--;
+            if (state != State.HALF_OPEN) {
+                return;
+            }
+            if (failure) {
+                transitionTo(State.OPEN);
+            } else if (++probesSucceeded >= breaker.getHalfOpenProbes()) {
+                transitionTo(State.CLOSED);
+            }
+        } else if (state == State.CLOSED) {
+            recordOutcome(failure);
+        }
+    }
+
+    /**
+     * AIMD: back off multiplicatively on a failure or a sample well above the latency baseline,
+     * otherwise grow additively while the limit is actually being used.
+     *
+     * The baseline is a slow moving average of every completed call, slow ones included (as in Gradient2's
+     * long-term RTT), so after a lasting change in the upstream's latency it converges to the new level
+     * within a few dozen calls and the limit recovers instead of staying pinned at min-limit.
+     */
+    private void updateLimit(long rttNanos, boolean failure) {
+        if (failure) {
+            // A failure's duration (often a timeout) says nothing about the upstream's normal latency
+            limit = Math.max(concurrency.getMinLimit(), limit * concurrency.getBackoffRatio());
+            return;
+        }
+        if (baselineRttNanos == 0) {
+            baselineRttNanos = rttNanos;
+        }
+
+        boolean slow = rttNanos > baselineRttNanos * concurrency.getLatencyTolerance();
+        baselineRttNanos += (rttNanos - baselineRttNanos) * BASELINE_SMOOTHING;
+        if (slow) {
+            limit = Math.max(concurrency.getMinLimit(), limit * concurrency.getBackoffRatio());
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(concurrency.getMaxLimit(), limit + 1.0 / limit);
+        }
+    }
+
+    private void recordOutcome(boolean failure) {
+        if (outcomeCount == outcomes.length) {
+            if (outcomes[outcomeIndex]) {
+                failureCount--;
+            }
+        } else {
+            outcomeCount++;
+        }
+        outcomes[outcomeIndex] = failure;
+        if (failure) {
+            failureCount++;
+        }
+        outcomeIndex = (outcomeIndex + 1) % outcomes.length;
+
+        if (outcomeCount >= breaker.getMinimumCalls()
+                && failureCount >= breaker.getFailureRateThreshold() * outcomeCount) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private void transitionTo(State next) {
+        if (state == next) {
+            return;
+        }
+        log.warn("Circuit breaker for {} changed from {} to {}", upstream, state, next);
+        state = next;
+
+        if (next == State.OPEN) {
+            openedAtNanos = System.nanoTime();
+        } else if (next == State.HALF_OPEN) {
+            probesSucceeded = 0;
+        } else {
+            outcomeCount = 0;
+            outcomeIndex = 0;
+            failureCount = 0;
+        }
+    }
+
+    /**
+     * Permission to make one call; report its outcome with onSuccess or onFailure
+     */
+    public final class Permit {
+        private final long startNanos = System.nanoTime();
+        private final boolean probe;
+        private boolean completed;
+
+        private Permit(boolean probe) {
+            this.probe = probe;
+        }
+
+        public void onSuccess() {
+            finish(false);
+        }
+
+        public void onFailure() {
+            finish(true);
+        }
+
+        private void finish(boolean failure) {
+            synchronized (UpstreamGuard.this) {
+                if (completed) {
+                    return;
+                }
+                completed = true;
+            }
+            complete(this, failure);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.fhirpriorauth.resilience;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The UpstreamGuard of each upstream Availity service
+ */
+@Component
+public class UpstreamGuards {
+
+    /** The OAuth token endpoint */
+    public static final String TOKEN = "token";
+
+    /** The Service Reviews API */
+    public static final String SERVICE_REVIEWS = "service-reviews";
+
+    /** The FHIR server used through HAPI's IGenericClient */
+    public static final String FHIR = "fhir";
+
+    private final ResilienceProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, UpstreamGuard> guards = new ConcurrentHashMap<>();
+
+    @Autowired
+    public UpstreamGuards(ResilienceProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Get the guard for an upstream
+     *
+     * @param upstream The upstream name, e.g. TOKEN
+     * @return The guard, created on first use
+     */
+    public UpstreamGuard forUpstream(String upstream) {
+        return guards.computeIfAbsent(upstream, name -> new UpstreamGuard(name, properties, meterRegistry));
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.fhirpriorauth.resilience;
+
+/**
+ * Thrown when the upstream answered a call with an unexpected HTTP status
+ */
+public class UpstreamResponseException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public UpstreamResponseException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
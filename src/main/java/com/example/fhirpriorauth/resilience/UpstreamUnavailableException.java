@@ -0,0 +1,33 @@
+package com.example.fhirpriorauth.resilience;
+
+/**
+ * Thrown without calling the upstream when its circuit breaker is open or its concurrency limit is reached
+ */
+public class UpstreamUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        /** The circuit breaker is open (or half-open with every probe slot taken) */
+        CIRCUIT_OPEN,
+        /** The adaptive concurrency limit is reached */
+        CONCURRENCY_LIMIT
+    }
+
+    private final String upstream;
+    private final Reason reason;
+
+    public UpstreamUnavailableException(String upstream, Reason reason, String message) {
+        super(message);
+        this.upstream = upstream;
+        this.reason = reason;
+    }
+
+    public String getUpstream() {
+        return upstream;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
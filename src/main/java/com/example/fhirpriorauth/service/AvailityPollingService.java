@@ -1,26 +1,230 @@
 package com.example.fhirpriorauth.service;
 
-import org.springframework.scheduling.annotation.Scheduled;
+import com.example.fhirpriorauth.model.PollingStatus;
+import com.example.fhirpriorauth.polling.StatusPoller;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Registry of the service reviews polled for their status.
+ *
+ * Polling itself is done by the StatusPoller through the authenticated service review client; every poll
+ * replaces the review's PollingStatus snapshot here, so reading one review is a single map lookup. Reviews are
+ * also indexed by registration order for cursor-paginated listing. Finished reviews stay readable until more than
+ * max-completed have finished after them.
+ */
 @Service
 public class AvailityPollingService {
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private static final Logger log = LoggerFactory.getLogger(AvailityPollingService.class);
+
+    @Value("${availity.polling.max-attempts:20}")
+    private int maxAttempts;
+
+    @Value("${availity.polling.initial-delay-ms:2000}")
+    private long initialDelayMillis;
+
+    @Value("${availity.polling.use-mock-scenario:false}")
+    private boolean useMockScenario;
+
+    @Value("${availity.polling.registry.max-completed:10000}")
+    private int maxCompleted;
+
+    private final StatusPoller statusPoller;
+
+    private final ConcurrentHashMap<String, PollingStatus> byId = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, String> bySequence = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    // Finished reviews in the order they finished, evicted oldest first beyond max-completed
+    private final Queue<String> completedOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger completedCount = new AtomicInteger();
+
+    private final CopyOnWriteArrayList<Consumer<PollingStatus>> listeners = new CopyOnWriteArrayList<>();
 
-    public void pollStatus(String id, String accessToken) {
-        String url = "https://api.availity.com/availity/v2/service-reviews/" + id;
+    @Autowired
+    public AvailityPollingService(StatusPoller statusPoller, MeterRegistry meterRegistry) {
+        this.statusPoller = statusPoller;
+        Gauge.builder("availity.polling.registry.size", byId, Map::size)
+                .description("Service reviews in the polling registry, in flight or finished")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        statusPoller.addListener(this::record);
+    }
+
+    /**
+     * Start polling a service review, unless it is already being polled
+     *
+     * @param id The ID of the service review
+     * @return The review's current polling status
+     */
+    public PollingStatus startPolling(String id) {
+        return startPolling(id, useMockScenario);
+    }
+
+    /**
+     * Start polling a service review, unless it is already being polled
+     *
+     * @param id The ID of the service review
+     * @param useMockScenario Whether to check the status with the mock scenario
+     * @return The review's current polling status
+     */
+    public PollingStatus startPolling(String id, boolean useMockScenario) {
+        StatusPoller.Handle handle = statusPoller.register(id, maxAttempts, initialDelayMillis, useMockScenario);
+        log.atInfo().setMessage("Polling registered")
+                .addKeyValue("resourceId", id)
+                .addKeyValue("attempts", handle.getAttempts())
+                .log();
+        return record(handle);
+    }
+
+    /**
+     * Get the polling status of a review
+     *
+     * @param id The ID of the service review
+     * @return The latest snapshot, or null if the review is not (or no longer) in the registry
+     */
+    public PollingStatus getStatus(String id) {
+        return byId.get(id);
+    }
+
+    /**
+     * List the registry in registration order
+     *
+     * @param afterSequence Only list reviews registered after this sequence (0 for the first page)
+     * @param limit Maximum number of reviews to list
+     * @return The reviews; the last one's sequence is the cursor of the next page
+     */
+    public List<PollingStatus> list(long afterSequence, int limit) {
+        List<PollingStatus> page = new ArrayList<>(Math.min(limit, 1024));
+        for (String id : bySequence.tailMap(afterSequence, false).values()) {
+            if (page.size() >= limit) {
+                break;
+            }
+            PollingStatus status = byId.get(id);
+            if (status != null) {
+                page.add(status);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Get the number of reviews in the registry
+     */
+    public int size() {
+        return byId.size();
+    }
+
+    /**
+     * Be given every new snapshot as the registry records it
+     *
+     * @param listener The listener, called on a poller or HTTP client thread; it must not block
+     */
+    public void addListener(Consumer<PollingStatus> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Replace a review's snapshot with the latest state of its polling
+     */
+    private PollingStatus record(StatusPoller.Handle handle) {
+        String id = handle.getId();
+        boolean[] newlyCompleted = new boolean[1];
+        PollingStatus updated = byId.compute(id, (key, previous) -> {
+            long sequence;
+            if (previous != null) {
+                sequence = previous.getSequence();
+            } else {
+                sequence = nextSequence.incrementAndGet();
+                bySequence.put(sequence, id);
+            }
+            boolean completed = handle.isDone();
+            newlyCompleted[0] = completed && (previous == null || !previous.isCompleted());
+            // A finished review reports its final status, which is TIMEOUT if it never left In Process
+            CompletableFuture<String> result = handle.getResult();
+            String status = completed && !result.isCompletedExceptionally() ? result.join() : handle.getLastStatus();
+            return new PollingStatus(sequence, id, status, handle.getAttempts(),
+                    handle.getLastPolledAt(), handle.getNextPollAt(), completed, handle.getLastError());
+        });
+
+        publish(updated, newlyCompleted[0]);
+        return updated;
+    }
+
+    /**
+     * Record the final status from a status notification for a review that is in the registry but no longer
+     * polled, e.g. one whose polling timed out before it was decided
+     *
+     * @param id The ID of the service review
+     * @param status The final mapped status from the notification
+     * @return The updated snapshot, or null if the review is not in the registry
+     */
+    public PollingStatus recordCallback(String id, String status) {
+        boolean[] newlyCompleted = new boolean[1];
+        PollingStatus updated = byId.computeIfPresent(id, (key, previous) -> {
+            newlyCompleted[0] = !previous.isCompleted();
+            return new PollingStatus(previous.getSequence(), id, status, previous.getAttempts(),
+                    previous.getLastPolled(), null, true, null);
+        });
+        if (updated != null) {
+            publish(updated, newlyCompleted[0]);
+        }
+        return updated;
+    }
+
+    /**
+     * Track a snapshot's completion and hand it to the listeners
+     */
+    private void publish(PollingStatus updated, boolean newlyCompleted) {
+        if (newlyCompleted) {
+            completedOrder.add(updated.getId());
+            completedCount.incrementAndGet();
+            evictCompleted();
+        }
+        for (Consumer<PollingStatus> listener : listeners) {
+            try {
+                listener.accept(updated);
+            } catch (RuntimeException e) {
+                log.warn("Polling registry listener failed for service review {}", updated.getId(), e);
+            }
+        }
+    }
 
-        try {
-            var response = restTemplate.getForEntity(
-                url,
-                String.class,
-                accessToken
-            );
-            System.out.println("✅ Status response for ID " + id + ": " + response.getBody());
-        } catch (Exception e) {
-            System.err.println("❌ Polling failed for ID " + id + ": " + e.getMessage());
+    private void evictCompleted() {
+        while (completedCount.get() > maxCompleted) {
+            String id = completedOrder.poll();
+            if (id == null) {
+                return;
+            }
+            completedCount.decrementAndGet();
+            // Skip reviews polled again since they finished
+            PollingStatus status = byId.get(id);
+            if (status != null && status.isCompleted() && byId.remove(id, status)) {
+                bySequence.remove(status.getSequence(), id);
+            }
         }
     }
 }
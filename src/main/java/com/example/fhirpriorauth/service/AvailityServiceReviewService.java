@@ -1,8 +1,22 @@
 package com.example.fhirpriorauth.service;
 
+import com.example.fhirpriorauth.config.HttpClientMetrics;
+import com.example.fhirpriorauth.model.ReviewClass;
+import com.example.fhirpriorauth.model.ServiceReviewStatus;
+import com.example.fhirpriorauth.polling.StatusPoller;
+import com.example.fhirpriorauth.resilience.AvailityRateLimiter;
+import com.example.fhirpriorauth.resilience.UpstreamGuard;
+import com.example.fhirpriorauth.resilience.UpstreamResponseException;
+import com.example.fhirpriorauth.resilience.RetryPolicy;
+import com.example.fhirpriorauth.resilience.UpstreamGuards;
+import com.example.fhirpriorauth.util.RequestBodyTemplate;
+import com.example.fhirpriorauth.util.ServiceReviewStatusReader;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,13 +24,35 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 
 /**
  * Service for interacting with Availity's Service Reviews API
@@ -27,24 +63,112 @@ public class AvailityServiceReviewService {
     private static final Logger log = LoggerFactory.getLogger(AvailityServiceReviewService.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
+    // Serializes payloads with sorted keys, so equal payloads always hash the same for idempotency
+    private static final ObjectMapper canonicalMapper = JsonMapper.builder()
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .build();
+
     @Value("${availity.api.service-reviews-url}")
     private String serviceReviewsUrl;
 
-    private final com.example.fhirpriorauth.auth.TokenService tokenService;
+    @Value("${availity.http.request-timeout-ms:30000}")
+    private long requestTimeoutMillis;
 
-    // Store the last response JSON for display in the UI
-    private String lastResponseJson = "{\"status\": \"No data available yet\"}";
+    private final com.example.fhirpriorauth.auth.TokenService tokenService;
+    private final HttpClient httpClient;
+    private final HttpClientMetrics httpClientMetrics;
+    private final IdempotencyCache idempotencyCache;
+    private final StatusResponseCache statusResponseCache;
+    private final StatusCheckCoalescer statusCheckCoalescer;
+    private final AvailityRateLimiter rateLimiter;
+    private final UpstreamGuard serviceReviewsGuard;
+    private final RetryPolicy retryPolicy;
+
+    // Reads streamed status responses; a blocking read on the HTTP client's own executor could starve the
+    // threads that deliver the bytes it is waiting for
+    private final ExecutorService statusParseExecutor;
+
+    // Retry listener for callers that do not track retries
+    private static final IntConsumer IGNORE_RETRIES = retry -> { };
+
+    // Request body templates, loaded from the classpath at startup
+    private static final String MOCK_SERVICE_REVIEW_LOCATION = "static/mock-data/mock-service-review.json";
+    private static final String SERVICE_REVIEW_TEMPLATE_LOCATION = "availity-templates/service-review.json";
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final String DEFAULT_PAYER_ID = "BCBSF";
+    private static final String DEFAULT_REQUEST_TYPE_CODE = "HS"; // HS = Outpatient
+
+    // Class of the built-in test review; its template has no service type
+    private static final ReviewClass DEFAULT_REVIEW_CLASS = new ReviewClass(DEFAULT_PAYER_ID, null, DEFAULT_REQUEST_TYPE_CODE);
+
+    private RequestBodyTemplate mockServiceReviewTemplate;
+    private RequestBodyTemplate serviceReviewTemplate;
+    private ReviewClass mockReviewClass;
+
+    // Shown in the UI for a review whose status response is not (or no longer) cached
+    private static final String NO_RESPONSE_JSON = "{\"status\": \"No data available yet\"}";
+
+    // Prefix of the status cache keys of mock scenario checks, which get a different response than real ones
+    private static final String MOCK_STATUS_KEY_PREFIX = "mock:";
+
+    // Maximum number of submitted review IDs to remember the payer for
+    private static final int MAX_TRACKED_REVIEWS = 10_000;
+
+    // Class and acceptance time of each submitted review, so status checks use the same Availity account as the
+    // submission and the poller can learn how long each class takes to be decided
+    private final Map<String, SubmittedReview> submittedReviews = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SubmittedReview> eldest) {
+                    return size() > MAX_TRACKED_REVIEWS;
+                }
+            });
 
     @Autowired
-    public AvailityServiceReviewService(com.example.fhirpriorauth.auth.TokenService tokenService) {
+    public AvailityServiceReviewService(com.example.fhirpriorauth.auth.TokenService tokenService,
+                                        HttpClient availityHttpClient,
+                                        HttpClientMetrics httpClientMetrics,
+                                        IdempotencyCache idempotencyCache,
+                                        StatusResponseCache statusResponseCache,
+                                        StatusCheckCoalescer statusCheckCoalescer,
+                                        AvailityRateLimiter rateLimiter,
+                                        UpstreamGuards upstreamGuards,
+                                        RetryPolicy retryPolicy,
+                                        @Value("${availity.http.parse-threads:4}") int parseThreads) {
         this.tokenService = tokenService;
+        this.httpClient = availityHttpClient;
+        this.httpClientMetrics = httpClientMetrics;
+        this.idempotencyCache = idempotencyCache;
+        this.statusResponseCache = statusResponseCache;
+        this.statusCheckCoalescer = statusCheckCoalescer;
+        this.rateLimiter = rateLimiter;
+        this.serviceReviewsGuard = upstreamGuards.forUpstream(UpstreamGuards.SERVICE_REVIEWS);
+        this.retryPolicy = retryPolicy;
+
+        AtomicInteger parseCounter = new AtomicInteger();
+        this.statusParseExecutor = Executors.newFixedThreadPool(parseThreads, r -> {
+            Thread thread = new Thread(r, "status-parse-" + parseCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @PostConstruct
     public void init() {
+        // Compile the request bodies once; submissions only fill in the slots
+        mockServiceReviewTemplate = RequestBodyTemplate.fromClasspath(MOCK_SERVICE_REVIEW_LOCATION);
+        mockReviewClass = extractReviewClass(new String(mockServiceReviewTemplate.render(Map.of()), StandardCharsets.UTF_8));
+        serviceReviewTemplate = RequestBodyTemplate.fromClasspath(SERVICE_REVIEW_TEMPLATE_LOCATION);
+
         log.info("AvailityServiceReviewService initialized with URL: {}", serviceReviewsUrl);
     }
 
+    @PreDestroy
+    public void shutdown() {
+        statusParseExecutor.shutdownNow();
+    }
+
     /**
      * Submit a service review (prior authorization) request to Availity
      *
@@ -61,121 +185,253 @@ public class AvailityServiceReviewService {
      * @return The ID of the service review request
      */
     public String submitServiceReview(boolean useMockData) {
-        try {
-            log.info("Submitting service review to Availity at URL: {}", serviceReviewsUrl);
+        return join(submitServiceReviewAsync(useMockData, null));
+    }
+
+    /**
+     * Submit a service review (prior authorization) request to Availity at most once per idempotency key
+     *
+     * @param useMockData Whether to use mock data from the mock-data file
+     * @param idempotencyKey The client's Idempotency-Key, or null to deduplicate on the request body
+     * @return The ID of the service review request
+     */
+    public String submitServiceReview(boolean useMockData, String idempotencyKey) {
+        return join(submitServiceReviewAsync(useMockData, idempotencyKey));
+    }
 
-            // Get the access token
-            String token = tokenService.fetchAccessToken();
-            log.info("Successfully obtained access token for Availity API");
+    /**
+     * Submit a service review (prior authorization) request to Availity without blocking the calling thread
+     *
+     * @param useMockData Whether to use mock data from the mock-data file
+     * @return A future completed with the ID of the service review request
+     */
+    public CompletableFuture<String> submitServiceReviewAsync(boolean useMockData) {
+        return submitServiceReviewAsync(useMockData, null);
+    }
 
-            // Create the request body
-            String requestBody;
+    /**
+     * Submit a service review (prior authorization) request to Availity without blocking the calling thread.
+     * Duplicates of a submission (same idempotency key, or same body when there is no key) return the
+     * original service review ID without another call to Availity.
+     *
+     * @param useMockData Whether to use mock data from the mock-data file
+     * @param idempotencyKey The client's Idempotency-Key, or null to deduplicate on the request body
+     * @return A future completed with the ID of the service review request
+     */
+    public CompletableFuture<String> submitServiceReviewAsync(boolean useMockData, String idempotencyKey) {
+        // Create the request body
+        byte[] requestBody;
+        ReviewClass reviewClass;
+        try {
             if (useMockData) {
-                // Read the mock data file
-                try {
-                    java.nio.file.Path path = java.nio.file.Paths.get("src/main/resources/mock-data/mock-service-review.json");
-                    requestBody = new String(java.nio.file.Files.readAllBytes(path));
-                    log.info("Using mock data from file: {}", path);
-                } catch (Exception e) {
-                    log.error("Failed to read mock data file, falling back to generated data", e);
-                    requestBody = createServiceReviewRequest();
-                }
+                requestBody = mockServiceReviewTemplate.render(Map.of());
+                reviewClass = mockReviewClass;
+                log.info("Using mock data from classpath: {}", MOCK_SERVICE_REVIEW_LOCATION);
             } else {
                 requestBody = createServiceReviewRequest();
+                reviewClass = DEFAULT_REVIEW_CLASS;
             }
+        } catch (Exception e) {
+            return wrapErrors(CompletableFuture.failedFuture(e), "Error submitting service review");
+        }
+
+        return submitOnce(idempotencyKey, requestBody, reviewClass, useMockData, IGNORE_RETRIES);
+    }
+
+    /**
+     * Submit a service review built from a FHIR Claim (see FhirToAvailityMapper) without blocking the calling thread
+     *
+     * @param serviceReview The Availity service review payload
+     * @return A future completed with the ID of the service review request
+     */
+    public CompletableFuture<String> submitServiceReviewAsync(Map<String, Object> serviceReview) {
+        return submitServiceReviewAsync(serviceReview, null);
+    }
+
+    /**
+     * Submit a service review built from a FHIR Claim at most once per idempotency key
+     *
+     * @param serviceReview The Availity service review payload
+     * @param idempotencyKey The client's Idempotency-Key, or null to deduplicate on the canonicalized payload
+     * @return A future completed with the ID of the service review request
+     */
+    public CompletableFuture<String> submitServiceReviewAsync(Map<String, Object> serviceReview, String idempotencyKey) {
+        return submitServiceReviewAsync(serviceReview, idempotencyKey, IGNORE_RETRIES);
+    }
+
+    /**
+     * Submit a service review built from a FHIR Claim at most once per idempotency key, reporting retries
+     *
+     * @param serviceReview The Availity service review payload
+     * @param idempotencyKey The client's Idempotency-Key, or null to deduplicate on the canonicalized payload
+     * @param onRetry Told the retry number (1, 2, ...) each time a transient failure is retried
+     * @return A future completed with the ID of the service review request
+     */
+    public CompletableFuture<String> submitServiceReviewAsync(Map<String, Object> serviceReview, String idempotencyKey,
+                                                              IntConsumer onRetry) {
+        byte[] requestBody;
+        try {
+            requestBody = canonicalMapper.writeValueAsBytes(serviceReview);
+        } catch (Exception e) {
+            return wrapErrors(CompletableFuture.failedFuture(e), "Error submitting service review");
+        }
+        return submitOnce(idempotencyKey, requestBody, reviewClassOf(serviceReview), false, onRetry);
+    }
+
+    /**
+     * Get the key a submission is deduplicated under: the client's Idempotency-Key, or without one,
+     * a SHA-256 hash of the canonicalized payload
+     *
+     * @param payload The submitted payload
+     * @param idempotencyKey The client's Idempotency-Key, or null
+     * @return The idempotency cache key
+     */
+    public String idempotencyKeyOf(Map<String, Object> payload, String idempotencyKey) {
+        if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+            return "key:" + idempotencyKey.trim();
+        }
+        try {
+            return "body:" + sha256Hex(canonicalMapper.writeValueAsBytes(payload));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Payload cannot be serialized: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get the Availity URL of a submitted service review, as returned in the submission's Location header
+     *
+     * @param id The ID of the service review
+     * @return The service review URL
+     */
+    public String getServiceReviewLocation(String id) {
+        return serviceReviewsUrl + "/" + id;
+    }
 
-            log.info("Created service review request body with {} characters", requestBody.length());
-            log.debug("Service review request body: {}", requestBody);
+    /**
+     * Submit a request body through the idempotency cache. The key is also sent to Availity as the
+     * Idempotency-Key header, so a submission replayed after a restart (when the in-memory cache is empty)
+     * can be recognized upstream.
+     *
+     * @param idempotencyKey The client's key, or null to key on a SHA-256 hash of the (canonical) body
+     */
+    private CompletableFuture<String> submitOnce(String idempotencyKey, byte[] requestBody, ReviewClass reviewClass,
+                                                 boolean useMockScenario, IntConsumer onRetry) {
+        String upstreamKey;
+        String key;
+        if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+            upstreamKey = idempotencyKey.trim();
+            key = "key:" + upstreamKey;
+        } else {
+            upstreamKey = sha256Hex(requestBody);
+            key = (useMockScenario ? "mock-body:" : "body:") + upstreamKey;
+        }
+        return idempotencyCache.submitOnce(key,
+                () -> submitServiceReviewAsync(requestBody, reviewClass, upstreamKey, useMockScenario, onRetry));
+    }
 
-            // Print the request details to the console
-            System.out.println("⏩ SENDING PRIOR AUTH REQUEST TO AVAILITY");
-            System.out.println("   URL: " + serviceReviewsUrl);
-            System.out.println("   Method: POST");
-            System.out.println("   Headers: Authorization, Content-Type, Accept" + (useMockData ? ", X-Api-Mock-Scenario-ID" : ""));
+    private static String sha256Hex(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
 
-            // Create the HTTP request builder
+    /**
+     * Submit a service review request body to Availity
+     *
+     * @param requestBody The UTF-8 encoded JSON request body
+     * @param reviewClass The class of the review; its payer picks the Availity account
+     * @param idempotencyKey Sent as the Idempotency-Key header
+     * @param useMockScenario Whether to ask Availity for the mock "request accepted" scenario
+     * @param onRetry Told the retry number each time a transient failure is retried
+     * @return A future completed with the ID of the service review request
+     */
+    private CompletableFuture<String> submitServiceReviewAsync(byte[] requestBody, ReviewClass reviewClass,
+                                                               String idempotencyKey, boolean useMockScenario,
+                                                               IntConsumer onRetry) {
+        CompletableFuture<String> result;
+        try {
+            String payerId = reviewClass.getPayerId();
+            log.atInfo().setMessage("Submitting service review to Availity")
+                    .addKeyValue("url", serviceReviewsUrl)
+                    .addKeyValue("payerId", payerId)
+                    .addKeyValue("bytes", requestBody.length)
+                    .addKeyValue("mockScenario", useMockScenario)
+                    .log();
+            log.atDebug().setMessage("Service review request body: {}")
+                    .addArgument(() -> new String(requestBody, StandardCharsets.UTF_8))
+                    .log();
+
+            // Create the HTTP request builder (the Authorization header is added when sending)
             HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
                     .uri(URI.create(serviceReviewsUrl))
-                    .header("Authorization", "Bearer " + token)
                     .header("Content-Type", "application/json")
-                    .header("Accept", "application/json");
+                    .header("Accept", "application/json")
+                    .header(IDEMPOTENCY_KEY_HEADER, idempotencyKey)
+                    .timeout(Duration.ofMillis(requestTimeoutMillis));
 
             // Add mock scenario header if using mock data
-            if (useMockData) {
+            if (useMockScenario) {
                 requestBuilder.header("X-Api-Mock-Scenario-ID", "SR-CreateRequestAccepted-i");
-                System.out.println("   Using mock scenario: SR-CreateRequestAccepted-i");
             }
 
-            // Build the request with the body
-            HttpRequest request = requestBuilder
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBody))
-                    .build();
-
-            // Send the request
-            HttpClient client = HttpClient.newHttpClient();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-            // Check the response
-            int statusCode = response.statusCode();
-            String responseBody = response.body();
-            log.info("Received response from Availity with status code: {}", statusCode);
-            log.debug("Service review response body: {}", responseBody);
-
-            // Log all response headers
-            log.debug("Response headers:");
-            response.headers().map().forEach((key, values) -> {
-                log.debug("   {}: {}", key, String.join(", ", values));
-            });
+            // Add the body and send the request (submit with the account that serves this payer)
+            requestBuilder.POST(HttpRequest.BodyPublishers.ofByteArray(requestBody));
+            result = sendAuthorizedAsync(AvailityRateLimiter.SUBMIT, payerId, requestBuilder,
+                    HttpResponse.BodyHandlers.ofString(), onRetry)
+                    .thenApply(response -> handleSubmitResponse(response, reviewClass));
+        } catch (Exception e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        return wrapErrors(result, "Error submitting service review");
+    }
 
-            if (statusCode == 202) {
-                // Success - get the location header
-                String location = response.headers().firstValue("Location").orElse(null);
-                if (location != null) {
-                    // Extract the ID from the location
-                    String id = location.substring(location.lastIndexOf("/") + 1);
-                    log.info("Service review submitted successfully. ID: {}", id);
-
-                    // Print success message
-                    System.out.println("\n✅ PRIOR AUTH SUBMITTED: Successfully submitted service review to Availity");
-                    System.out.println("   Status: 202 Accepted");
-                    System.out.println("   Resource ID: " + id);
-                    System.out.println("   Location: " + location);
-                    System.out.println("   Poll URL: " + serviceReviewsUrl + "/" + id);
-                    System.out.println("\nTo check status, use: curl http://localhost:8080/prior-auth/submit/" + id);
-
-                    return id;
-                } else {
-                    log.error("Service review submitted but no location header found");
-                    throw new RuntimeException("Service review submitted but no location header found");
-                }
+    /**
+     * Handle the response to a service review submission
+     *
+     * @param response The response from Availity
+     * @param reviewClass The class of the submitted review
+     * @return The ID of the service review request
+     */
+    private String handleSubmitResponse(HttpResponse<String> response, ReviewClass reviewClass) {
+        // Check the response
+        int statusCode = response.statusCode();
+        String responseBody = response.body();
+        log.info("Received response from Availity with status code: {}", statusCode);
+        log.atDebug().setMessage("Service review response body: {}")
+                .addArgument(responseBody)
+                .addKeyValue("headers", () -> response.headers().map())
+                .log();
+
+        if (statusCode == 202) {
+            // Success - get the location header
+            String location = response.headers().firstValue("Location").orElse(null);
+            if (location != null) {
+                // Extract the ID from the location
+                String id = location.substring(location.lastIndexOf("/") + 1);
+                log.atInfo().setMessage("Service review submitted successfully")
+                        .addKeyValue("resourceId", id)
+                        .addKeyValue("location", location)
+                        .addKeyValue("reviewClass", reviewClass)
+                        .log();
+                submittedReviews.put(id, new SubmittedReview(reviewClass, Instant.now()));
+
+                return id;
             } else {
-                // Error
-                log.error("Failed to submit service review. Status: {}, Response: {}", statusCode, responseBody);
-
-                // Print error message
-                System.out.println("\n❌ PRIOR AUTH ERROR: Failed to submit service review to Availity");
-                System.out.println("   Status: " + statusCode);
-                System.out.println("   URL: " + serviceReviewsUrl);
-                System.out.println("   Response: " + responseBody);
-
-                // Try to parse the response as JSON for more details
-                try {
-                    JsonNode errorNode = objectMapper.readTree(responseBody);
-                    if (errorNode.has("validationMessages") && errorNode.get("validationMessages").isArray()) {
-                        System.out.println("   Validation Messages:");
-                        for (JsonNode message : errorNode.get("validationMessages")) {
-                            System.out.println("      - " + message.asText());
-                        }
-                    }
-                } catch (Exception e) {
-                    // Ignore parsing errors
-                }
-
-                throw new RuntimeException("Failed to submit service review. Status: " + statusCode);
+                log.error("Service review submitted but no location header found");
+                throw new RuntimeException("Service review submitted but no location header found");
             }
-        } catch (Exception e) {
-            log.error("Error submitting service review", e);
-            throw new RuntimeException("Error submitting service review: " + e.getMessage(), e);
+        } else {
+            // Error
+            log.atError().setMessage("Failed to submit service review. Status: {}, Response: {}")
+                    .addArgument(statusCode)
+                    .addArgument(responseBody)
+                    .addKeyValue("url", serviceReviewsUrl)
+                    .addKeyValue("validationMessages", () -> validationMessagesOf(responseBody))
+                    .log();
+
+            throw new UpstreamResponseException(statusCode, "Failed to submit service review. Status: " + statusCode);
         }
     }
 
@@ -186,7 +442,7 @@ public class AvailityServiceReviewService {
      * @return The status of the service review
      */
     public String checkServiceReviewStatus(String id) {
-        return checkServiceReviewStatus(id, false);
+        return join(checkServiceReviewStatusAsync(id, false));
     }
 
     /**
@@ -196,237 +452,470 @@ public class AvailityServiceReviewService {
      * @return The status of the service review
      */
     public String checkServiceReviewStatusWithMock(String id) {
-        return checkServiceReviewStatus(id, true);
+        return join(checkServiceReviewStatusAsync(id, true));
     }
 
     /**
-     * Check the status of a service review
+     * Check the status of a service review without blocking the calling thread
+     *
+     * @param id The ID of the service review
+     * @return A future completed with the status of the service review
+     */
+    public CompletableFuture<String> checkServiceReviewStatusAsync(String id) {
+        return checkServiceReviewStatusAsync(id, false);
+    }
+
+    /**
+     * Check the status of a service review with mock scenario without blocking the calling thread
+     *
+     * @param id The ID of the service review
+     * @return A future completed with the status of the service review
+     */
+    public CompletableFuture<String> checkServiceReviewStatusWithMockAsync(String id) {
+        return checkServiceReviewStatusAsync(id, true);
+    }
+
+    /**
+     * Check the status of a service review, answering from the status cache if it was checked within
+     * the freshness window. Otherwise, if an earlier response is still cached, the GET is conditional on
+     * its ETag / Last-Modified, and a 304 is answered from the cached status. Concurrent checks of the same
+     * review share one upstream GET.
      *
      * @param id The ID of the service review
      * @param useMockScenario Whether to use a mock scenario
-     * @return The status of the service review
+     * @return A future completed with the status of the service review
      */
-    private String checkServiceReviewStatus(String id, boolean useMockScenario) {
+    private CompletableFuture<String> checkServiceReviewStatusAsync(String id, boolean useMockScenario) {
+        String cacheKey = statusCacheKey(id, useMockScenario);
+        StatusResponseCache.Entry cached = statusResponseCache.getFresh(cacheKey);
+        if (cached != null) {
+            log.debug("Status of service review {} served from cache: {}", id, cached.getMappedStatus());
+            return CompletableFuture.completedFuture(cached.getMappedStatus());
+        }
+
+        return statusCheckCoalescer.checkOnce(cacheKey, () -> {
+            StatusResponseCache.Entry stale = statusResponseCache.get(cacheKey);
+            StatusResponseCache.Validators validators = stale != null
+                    ? stale.getValidators() : StatusResponseCache.Validators.NONE;
+            return wrapErrors(fetchServiceReviewStatusAsync(id, useMockScenario, validators),
+                    "Error checking service review status");
+        });
+    }
+
+    /**
+     * Send the status GET for a service review
+     *
+     * @param id The ID of the service review
+     * @param useMockScenario Whether to use a mock scenario
+     * @param validators The cached response's validators to make the GET conditional on, or NONE
+     * @return A future completed with the status of the service review
+     */
+    private CompletableFuture<String> fetchServiceReviewStatusAsync(String id, boolean useMockScenario,
+                                                                    StatusResponseCache.Validators validators) {
         try {
             log.info("Checking status of service review: {}", id);
 
-            // Get the access token
-            String token = tokenService.fetchAccessToken();
-            if (token == null) {
-                throw new RuntimeException("Failed to obtain access token from Availity");
-            }
-
-            // Create the HTTP request builder
+            // Create the HTTP request builder (the Authorization header is added when sending)
             HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
                     .uri(URI.create(serviceReviewsUrl + "/" + id))
-                    .header("Authorization", "Bearer " + token)
-                    .header("Accept", "application/json");
+                    .header("Accept", "application/json")
+                    .timeout(Duration.ofMillis(requestTimeoutMillis));
 
             // Add mock scenario header if using mock scenario
             if (useMockScenario) {
                 requestBuilder.header("X-Api-Mock-Scenario-ID", "SR-GetComplete-i");
-                System.out.println("   Using mock scenario: SR-GetComplete-i");
             }
 
-            // Build the request
-            HttpRequest request = requestBuilder.GET().build();
-
-            // Send the request
-            HttpClient client = HttpClient.newHttpClient();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-            // Check the response
-            int statusCode = response.statusCode();
-            String responseBody = response.body();
-            log.debug("Service review status response: {} - {}", statusCode, responseBody);
-
-            if (statusCode == 200) {
-                // Success - parse the response
-                JsonNode jsonNode = objectMapper.readTree(responseBody);
-
-                // Store the response JSON for display in the UI
-                lastResponseJson = responseBody;
-
-                // Extract status information
-                String statusCodeValue = jsonNode.has("statusCode") ? jsonNode.get("statusCode").asText() : "unknown";
-                String statusText = jsonNode.has("status") ? jsonNode.get("status").asText() : "Unknown";
-
-                // Map Availity status codes to our internal status codes
-                String mappedStatus = mapAvailityStatus(statusCodeValue, statusText);
-
-                // Print status message
-                System.out.println("ℹ️ SERVICE REVIEW STATUS: " + statusText + " (" + statusCodeValue + ")");
-                System.out.println("   ID: " + id);
-                System.out.println("   Status Code: " + statusCodeValue);
-                System.out.println("   Status Text: " + statusText);
-                System.out.println("   Mapped Status: " + mappedStatus);
-
-                // Print the full response for debugging
-                System.out.println("   Full Response: " + responseBody.substring(0, Math.min(200, responseBody.length())) + "...");
-
-                // Check for status reasons
-                if (jsonNode.has("statusReasons") && jsonNode.get("statusReasons").isArray() &&
-                        jsonNode.get("statusReasons").size() > 0) {
-                    System.out.println("   Status Reasons:");
-                    for (JsonNode reason : jsonNode.get("statusReasons")) {
-                        String reasonCode = reason.has("code") ? reason.get("code").asText() : "";
-                        String reasonValue = reason.has("value") ? reason.get("value").asText() : "";
-                        System.out.println("      - " + reasonValue + " (" + reasonCode + ")");
-                    }
-                }
-
-                // Check for validation messages
-                if (jsonNode.has("validationMessages") && jsonNode.get("validationMessages").isArray() &&
-                        jsonNode.get("validationMessages").size() > 0) {
-                    System.out.println("   Validation Messages:");
-                    for (JsonNode message : jsonNode.get("validationMessages")) {
-                        System.out.println("      - " + message.asText());
-                    }
-                }
-
-                return mappedStatus;
-            } else {
-                // Error
-                log.error("Failed to check service review status. Status: {}, Response: {}", statusCode, responseBody);
-
-                // Print error message
-                System.out.println("❌ SERVICE REVIEW STATUS ERROR: Failed to check service review status");
-                System.out.println("   Status: " + statusCode);
-                System.out.println("   Response: " + responseBody);
-
-                throw new RuntimeException("Failed to check service review status. Status: " + statusCode);
+            // Only download the review again if it changed since the cached response
+            if (validators.getEtag() != null) {
+                requestBuilder.header("If-None-Match", validators.getEtag());
+            }
+            if (validators.getLastModified() != null) {
+                requestBuilder.header("If-Modified-Since", validators.getLastModified());
             }
+
+            // Send the request with the account the review was submitted with, streaming the response body;
+            // the stream is read on the parse executor, never on the HTTP client's
+            return sendAuthorizedAsync(AvailityRateLimiter.STATUS, getPayerId(id), requestBuilder.GET(),
+                    HttpResponse.BodyHandlers.ofInputStream(), IGNORE_RETRIES)
+                    .thenComposeAsync(response -> {
+                        if (response.statusCode() != 304) {
+                            return CompletableFuture.completedFuture(
+                                    handleStatusResponse(id, response, useMockScenario, !validators.isEmpty()));
+                        }
+                        RetryPolicy.discard(response);
+                        StatusResponseCache.Entry refreshed = statusResponseCache.refresh(
+                                statusCacheKey(id, useMockScenario), validatorsOf(response));
+                        if (refreshed == null) {
+                            // Evicted since the request was sent, so there is nothing to answer from
+                            log.debug("Cached status of service review {} evicted before its 304, fetching again", id);
+                            return fetchServiceReviewStatusAsync(id, useMockScenario,
+                                    StatusResponseCache.Validators.NONE);
+                        }
+                        log.atInfo().setMessage("Service review status unchanged: {}")
+                                .addArgument(refreshed.getMappedStatus())
+                                .addKeyValue("resourceId", id)
+                                .log();
+                        return CompletableFuture.completedFuture(refreshed.getMappedStatus());
+                    }, statusParseExecutor);
         } catch (Exception e) {
-            log.error("Error checking service review status", e);
-            throw new RuntimeException("Error checking service review status: " + e.getMessage(), e);
+            return CompletableFuture.failedFuture(e);
         }
     }
 
     /**
-     * Poll for the status of a service review until it's complete
+     * Apply a status notification pushed by Availity (see StatusCallbackService) as if it were a status check
+     * response: the status cache is updated, so status checks in the freshness window are answered from it.
+     * An "In Process" notification never replaces a final status, whether that came from an earlier notification
+     * or is in the cache from a status check.
      *
      * @param id The ID of the service review
-     * @param maxAttempts Maximum number of polling attempts
-     * @param delayMillis Delay between polling attempts in milliseconds
-     * @return The final status of the service review
+     * @param body The notification body: the service review JSON, as a status check returns it
+     * @param previousStatus The mapped status of the last notification applied for the review, or null
+     * @return The mapped status of the service review
+     * @throws IllegalArgumentException If the body is not a service review status
+     * @throws IllegalStateException If the notification is "In Process" but the review already has a final status
+     */
+    public String applyStatusNotification(String id, byte[] body, String previousStatus) {
+        ServiceReviewStatus status;
+        try {
+            status = ServiceReviewStatusReader.read(body);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Status notification is not a service review: " + e.getMessage(), e);
+        }
+        if (status.getStatusCode() == null || "unknown".equals(status.getStatusCode())) {
+            throw new IllegalArgumentException("Status notification has no statusCode");
+        }
+
+        String mappedStatus = mapAvailityStatus(status.getStatusCode(), status.getStatus());
+        if (StatusPoller.IN_PROCESS.equals(mappedStatus)) {
+            StatusResponseCache.Entry cached = statusResponseCache.get(statusCacheKey(id, false));
+            String finalStatus = previousStatus != null && !StatusPoller.IN_PROCESS.equals(previousStatus)
+                    ? previousStatus
+                    : cached != null && !StatusPoller.IN_PROCESS.equals(cached.getMappedStatus())
+                            ? cached.getMappedStatus() : null;
+            if (finalStatus != null) {
+                throw new IllegalStateException("Service review " + id + " already has final status " + finalStatus);
+            }
+        }
+        statusResponseCache.put(statusCacheKey(id, false), mappedStatus, status, null,
+                StatusResponseCache.Validators.NONE, body.length);
+        // Keep the JSON the UI displays current for reviews checked with the mock scenario
+        if (statusResponseCache.get(statusCacheKey(id, true)) != null) {
+            statusResponseCache.put(statusCacheKey(id, true), mappedStatus, status,
+                    new String(body, StandardCharsets.UTF_8), StatusResponseCache.Validators.NONE, body.length);
+        }
+
+        log.atInfo().setMessage("Service review status notification: {} ({})")
+                .addArgument(status.getStatus())
+                .addArgument(status.getStatusCode())
+                .addKeyValue("resourceId", id)
+                .addKeyValue("mappedStatus", mappedStatus)
+                .log();
+        return mappedStatus;
+    }
+
+    /**
+     * Get the ETag and Last-Modified headers of a response
      */
-    public String pollServiceReviewStatus(String id, int maxAttempts, long delayMillis) {
-        return pollServiceReviewStatus(id, maxAttempts, delayMillis, true); // Use mock scenario by default
+    private static StatusResponseCache.Validators validatorsOf(HttpResponse<?> response) {
+        return new StatusResponseCache.Validators(
+                response.headers().firstValue("ETag").orElse(null),
+                response.headers().firstValue("Last-Modified").orElse(null));
     }
 
     /**
-     * Poll for the status of a service review until it's complete
+     * Handle the response to a service review status check. The status fields are read straight from the
+     * response stream; the body is only kept in full for mock scenario checks, whose JSON the UI displays.
+     * The reads block, so this runs on the status parse executor.
      *
      * @param id The ID of the service review
-     * @param maxAttempts Maximum number of polling attempts
-     * @param delayMillis Delay between polling attempts in milliseconds
-     * @param useMockScenario Whether to use a mock scenario
-     * @return The final status of the service review
+     * @param response The response from Availity, with the body still unread
+     * @param useMockScenario Whether this was a mock scenario check, whose body is kept for the UI
+     * @param conditional Whether the request was a conditional GET, i.e. this is a changed review
+     * @return The mapped status of the service review
      */
-    private String pollServiceReviewStatus(String id, int maxAttempts, long delayMillis, boolean useMockScenario) {
-        log.info("Polling for service review status: {}", id);
-
-        String status = "0"; // Start with "In Process"
-        int attempts = 0;
+    private String handleStatusResponse(String id, HttpResponse<InputStream> response, boolean useMockScenario,
+                                        boolean conditional) {
+        // Check the response
+        int statusCode = response.statusCode();
+        try (CountingInputStream body = new CountingInputStream(response.body())) {
+            if (statusCode != 200) {
+                String responseBody = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+                log.atError().setMessage("Failed to check service review status. Status: {}, Response: {}")
+                        .addArgument(statusCode)
+                        .addArgument(responseBody)
+                        .addKeyValue("resourceId", id)
+                        .log();
+                throw new UpstreamResponseException(statusCode, "Failed to check service review status. Status: " + statusCode);
+            }
 
-        while (attempts < maxAttempts && "0".equals(status)) {
-            try {
-                // Wait before checking again
-                if (attempts > 0) {
-                    Thread.sleep(delayMillis);
+            // Success - extract the status fields
+            ServiceReviewStatus status;
+            String responseJson = null;
+            if (useMockScenario || log.isDebugEnabled()) {
+                byte[] responseBody = body.readAllBytes();
+                log.debug("Service review status response: {} - {}", statusCode,
+                        new String(responseBody, StandardCharsets.UTF_8));
+
+                // Keep the response JSON for display in the UI
+                if (useMockScenario) {
+                    responseJson = new String(responseBody, StandardCharsets.UTF_8);
                 }
+                status = ServiceReviewStatusReader.read(responseBody);
+            } else {
+                status = ServiceReviewStatusReader.read(body);
+            }
 
-                // Check the status
-                status = useMockScenario ? checkServiceReviewStatusWithMock(id) : checkServiceReviewStatus(id);
-                attempts++;
+            // Map Availity status codes to our internal status codes
+            String mappedStatus = mapAvailityStatus(status.getStatusCode(), status.getStatus());
+            statusResponseCache.put(statusCacheKey(id, useMockScenario), mappedStatus, status, responseJson,
+                    validatorsOf(response), body.getCount());
+            if (conditional) {
+                statusResponseCache.recordModified();
+            }
 
-                // If still in process, log and continue
-                if ("0".equals(status)) {
-                    log.info("Service review still in process. Attempt: {}/{}", attempts, maxAttempts);
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.error("Polling interrupted", e);
-                throw new RuntimeException("Polling interrupted", e);
+            log.atInfo().setMessage("Service review status: {} ({})")
+                    .addArgument(status.getStatus())
+                    .addArgument(status.getStatusCode())
+                    .addKeyValue("resourceId", id)
+                    .addKeyValue("mappedStatus", mappedStatus)
+                    .log();
+            log.atDebug().setMessage("Service review status details")
+                    .addKeyValue("resourceId", id)
+                    .addKeyValue("statusReasons", status.getStatusReasons())
+                    .addKeyValue("validationMessages", status.getValidationMessages())
+                    .log();
+
+            return mappedStatus;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Counts the bytes read from a response body, so a later 304 knows how much it saved
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
             }
+            return b;
         }
 
-        if ("0".equals(status) && attempts >= maxAttempts) {
-            log.warn("Reached maximum polling attempts. Service review still in process.");
-            return "TIMEOUT";
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
         }
 
-        return status;
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return count;
+        }
     }
 
     /**
-     * Create a service review request body
+     * Get the validation messages of an Availity error response, for logging
+     */
+    private static List<String> validationMessagesOf(String responseBody) {
+        try {
+            return ServiceReviewStatusReader.read(responseBody.getBytes(StandardCharsets.UTF_8)).getValidationMessages();
+        } catch (Exception e) {
+            // Not JSON
+            return List.of();
+        }
+    }
+
+    /**
+     * Send a request to Availity with a bearer token for the payer's account.
+     * If Availity answers 401 (token revoked or rotated early), the token is invalidated,
+     * refreshed once through the single-flight path, and the request is replayed exactly once.
      *
-     * @return The request body as a JSON string
+     * @param endpoint The endpoint class for rate limiting (AvailityRateLimiter.SUBMIT or STATUS)
+     * @param payerId The payer ID used to pick the Availity account, or null for the default account
+     * @param requestBuilder The request without an Authorization header
+     * @param bodyHandler How to receive the response body
+     * @param onRetry Told the retry number each time a transient failure is retried
+     * @return A future completed with the response
+     */
+    private <T> CompletableFuture<HttpResponse<T>> sendAuthorizedAsync(String endpoint, String payerId,
+                                                                       HttpRequest.Builder requestBuilder,
+                                                                       HttpResponse.BodyHandler<T> bodyHandler,
+                                                                       IntConsumer onRetry) {
+        return tokenService.fetchAccessTokenForPayerAsync(payerId).thenCompose(token -> {
+            if (token == null) {
+                if (tokenService.credentialsRejectedForPayer(payerId)) {
+                    // Refused or missing credentials fail the same way until someone fixes the configuration
+                    throw new UpstreamResponseException(401, "Availity rejected the client credentials");
+                }
+                // Availity never saw the request, so this is as transient as a 503
+                throw new UpstreamResponseException(503, "Failed to obtain access token from Availity");
+            }
+
+            return sendAsync(endpoint, payerId, requestBuilder, token, bodyHandler, onRetry).thenCompose(response -> {
+                if (response.statusCode() != 401) {
+                    return CompletableFuture.completedFuture(response);
+                }
+
+                log.warn("Availity rejected the access token (401); refreshing and retrying once");
+                tokenService.invalidateForPayer(payerId, token);
+                return tokenService.fetchAccessTokenForPayerAsync(payerId).thenCompose(refreshedToken -> {
+                    if (refreshedToken == null || refreshedToken.equals(token)) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    RetryPolicy.discard(response);
+                    return sendAsync(endpoint, payerId, requestBuilder, refreshedToken, bodyHandler, onRetry);
+                });
+            });
+        });
+    }
+
+    /**
+     * Send a request over the shared client with the given bearer token, once the payer's rate limit admits it.
+     * Transient failures are retried by the RetryPolicy. Status checks are idempotent, and so are submissions
+     * carrying an Idempotency-Key (every submission does), because Availity answers a repeated key with the
+     * original service review; they are retried after 500/502/504 and timeouts as well as 429 or 503.
+     */
+    private <T> CompletableFuture<HttpResponse<T>> sendAsync(String endpoint, String payerId,
+                                                             HttpRequest.Builder requestBuilder, String token,
+                                                             HttpResponse.BodyHandler<T> bodyHandler,
+                                                             IntConsumer onRetry) {
+        HttpRequest request = requestBuilder.copy()
+                .header("Authorization", "Bearer " + token)
+                .build();
+        boolean idempotent = AvailityRateLimiter.STATUS.equals(endpoint)
+                || request.headers().firstValue(IDEMPOTENCY_KEY_HEADER).isPresent();
+        return retryPolicy.executeAsync(UpstreamGuards.SERVICE_REVIEWS, idempotent, () -> rateLimiter.acquire(endpoint, payerId)
+                .thenCompose(admitted -> serviceReviewsGuard.executeAsync(
+                        () -> httpClient.sendAsync(request, bodyHandler),
+                        response -> response.statusCode() >= 500))
+                .thenApply(response -> {
+                    httpClientMetrics.record("service-reviews", response);
+                    return response;
+                }), onRetry);
+    }
+
+    /**
+     * Log a failed call and rethrow it as a RuntimeException with the given message prefix
      */
-    private String createServiceReviewRequest() {
+    private static <T> CompletableFuture<T> wrapErrors(CompletableFuture<T> future, String message) {
+        return future.handle((value, error) -> {
+            if (error == null) {
+                return value;
+            }
+            Throwable cause = unwrap(error);
+            log.error(message, cause);
+            throw new RuntimeException(message + ": " + cause.getMessage(), cause);
+        });
+    }
+
+    /**
+     * Wait for an async call and rethrow its failure unwrapped, for the blocking variants of the API
+     */
+    private static <T> T join(CompletableFuture<T> future) {
         try {
-            ObjectNode requestNode = objectMapper.createObjectNode();
-
-            // Payer information
-            ObjectNode payerNode = requestNode.putObject("payer");
-            payerNode.put("id", "BCBSF");
-            payerNode.put("name", "FLORIDA BLUE");
-
-            // Requesting provider information
-            ObjectNode providerNode = requestNode.putObject("requestingProvider");
-            providerNode.put("lastName", "Doe");
-            providerNode.put("npi", "1234567890");
-            providerNode.put("submitterId", "G12345");
-            providerNode.put("specialtyCode", "207T00000X");
-            providerNode.put("addressLine1", "321 Main St");
-            providerNode.put("city", "JACKSONVILLE");
-            providerNode.put("stateCode", "FL");
-            providerNode.put("zipCode", "32223");
-            providerNode.put("contactName", "John Doe");
-            providerNode.put("phone", "9043334444");
-
-            // Subscriber information
-            ObjectNode subscriberNode = requestNode.putObject("subscriber");
-            subscriberNode.put("firstName", "Jane");
-            subscriberNode.put("middleName", "J");
-            subscriberNode.put("lastName", "Smith");
-            subscriberNode.put("suffix", "JR");
-            subscriberNode.put("memberId", "TEST1");
-            subscriberNode.put("addressLine1", "123 MAIN ST");
-            subscriberNode.put("addressLine2", "APT 3");
-            subscriberNode.put("city", "JACKSONVILLE");
-            subscriberNode.put("stateCode", "FL");
-            subscriberNode.put("zipCode", "12345");
-
-            // Patient information
-            ObjectNode patientNode = requestNode.putObject("patient");
-            patientNode.put("firstName", "Jane");
-            patientNode.put("middleName", "J");
-            patientNode.put("lastName", "Smith");
-            patientNode.put("suffix", "JR");
-            patientNode.put("subscriberRelationshipCode", "18");
-            patientNode.put("birthDate", "1990-01-01");
-            patientNode.put("genderCode", "F");
-
-            // Request information
-            requestNode.put("requestTypeCode", "HS"); // HS = Outpatient
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
 
+    /**
+     * Create a service review request body
+     *
+     * @return The UTF-8 encoded request body, rendered from the service review template
+     */
+    private byte[] createServiceReviewRequest() {
+        try {
             // Set dates (current date to 5 days later)
             LocalDate fromDate = LocalDate.now();
             LocalDate toDate = fromDate.plusDays(5);
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-
-            requestNode.put("fromDate", fromDate.format(formatter));
-            requestNode.put("toDate", toDate.format(formatter));
 
-            return objectMapper.writeValueAsString(requestNode);
+            return serviceReviewTemplate.render(Map.of(
+                    "payerId", DEFAULT_PAYER_ID,
+                    "payerName", "FLORIDA BLUE",
+                    "memberId", "TEST1",
+                    "requestTypeCode", DEFAULT_REQUEST_TYPE_CODE,
+                    "fromDate", fromDate.format(DateTimeFormatter.ISO_LOCAL_DATE),
+                    "toDate", toDate.format(DateTimeFormatter.ISO_LOCAL_DATE)));
         } catch (Exception e) {
             log.error("Error creating service review request", e);
             throw new RuntimeException("Error creating service review request: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Get the class of a service review payload (as built by FhirToAvailityMapper)
+     *
+     * @param serviceReview The payload, with or without the serviceReview wrapper
+     * @return The payer ID, service type and request type; each null if the payload has none
+     */
+    @SuppressWarnings("unchecked")
+    private static ReviewClass reviewClassOf(Map<String, Object> serviceReview) {
+        Object wrapped = serviceReview.getOrDefault("serviceReview", serviceReview);
+        Map<String, Object> review = wrapped instanceof Map ? (Map<String, Object>) wrapped : Map.of();
+        Object payer = review.get("payer");
+        Object payerId = payer instanceof Map ? ((Map<String, Object>) payer).get("id") : null;
+        Object serviceTypeCode = review.get("serviceTypeCode");
+        Object requestTypeCode = review.get("requestTypeCode");
+        return new ReviewClass(payerId != null ? payerId.toString() : null,
+                serviceTypeCode != null ? serviceTypeCode.toString() : null,
+                requestTypeCode != null ? requestTypeCode.toString() : null);
+    }
+
+    /**
+     * Extract the class of a service review from its request body
+     *
+     * @param requestBody The request body, with or without the serviceReview wrapper
+     * @return The payer ID, service type and request type; each null if the body has none
+     */
+    private ReviewClass extractReviewClass(String requestBody) {
+        try {
+            JsonNode root = objectMapper.readTree(requestBody);
+            JsonNode review = root.has("serviceReview") ? root.get("serviceReview") : root;
+            return new ReviewClass(textOrNull(review.path("payer").path("id")),
+                    textOrNull(review.path("serviceTypeCode")), textOrNull(review.path("requestTypeCode")));
+        } catch (Exception e) {
+            log.warn("Could not read payer and codes from service review request: {}", e.getMessage());
+            return new ReviewClass(null, null, null);
+        }
+    }
+
+    private static String textOrNull(JsonNode node) {
+        return node.isMissingNode() || node.isNull() ? null : node.asText();
+    }
+
     /**
      * Map Availity status codes to our internal status codes
      *
@@ -450,36 +939,62 @@ public class AvailityServiceReviewService {
     }
 
     /**
-     * Get the last response JSON
+     * Get the payer a service review was submitted for
+     *
+     * @param id The ID of the service review
+     * @return The payer ID, or null if the review was not submitted through this instance (or is no longer tracked)
+     */
+    public String getPayerId(String id) {
+        SubmittedReview review = submittedReviews.get(id);
+        return review != null ? review.getReviewClass().getPayerId() : null;
+    }
+
+    /**
+     * Get the class and acceptance time of a service review
      *
-     * @return The last response JSON
+     * @param id The ID of the service review
+     * @return The submitted review, or null if it was not submitted through this instance (or is no longer tracked)
      */
-    public String getLastResponseJson() {
-        return lastResponseJson;
+    public SubmittedReview getSubmittedReview(String id) {
+        return submittedReviews.get(id);
     }
 
     /**
-     * Get a description for a status code
+     * Get the response JSON of a review's last status check made with the mock scenario
      *
-     * @param statusCode The status code
-     * @return A description of the status
-     */
-    private String getStatusDescription(String statusCode) {
-        switch (statusCode) {
-            case "0":
-                return "In Process";
-            case "4":
-                return "Complete";
-            case "A4":
-                return "Pended (Complete)";
-            case "400":
-                return "Error";
-            case "504":
-                return "Timeout from health plan";
-            case "TIMEOUT":
-                return "Polling timeout";
-            default:
-                return "Unknown status: " + statusCode;
+     * @param id The ID of the service review
+     * @return The cached response JSON, or a placeholder if there is none
+     */
+    public String getMockStatusResponseJson(String id) {
+        StatusResponseCache.Entry cached = statusResponseCache.get(statusCacheKey(id, true));
+        return cached != null && cached.getResponseJson() != null ? cached.getResponseJson() : NO_RESPONSE_JSON;
+    }
+
+    private static String statusCacheKey(String id, boolean useMockScenario) {
+        return useMockScenario ? MOCK_STATUS_KEY_PREFIX + id : id;
+    }
+
+    /**
+     * A service review accepted by Availity through this instance
+     */
+    public static final class SubmittedReview {
+        private final ReviewClass reviewClass;
+        private final Instant acceptedAt;
+
+        private SubmittedReview(ReviewClass reviewClass, Instant acceptedAt) {
+            this.reviewClass = reviewClass;
+            this.acceptedAt = acceptedAt;
+        }
+
+        public ReviewClass getReviewClass() {
+            return reviewClass;
+        }
+
+        /**
+         * Get when Availity answered the submission with 202 Accepted
+         */
+        public Instant getAcceptedAt() {
+            return acceptedAt;
         }
     }
 }
@@ -0,0 +1,178 @@
+package com.example.fhirpriorauth.service;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.example.fhirpriorauth.util.FhirToAvailityMapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import org.hl7.fhir.r4.model.Claim;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Service for submitting batches of FHIR Claims to Availity.
+ *
+ * Claims are read lazily from the input, mapped with FhirToAvailityMapper and submitted with at most
+ * a configured number of submissions in flight at once. Each result is handed to the caller as soon as
+ * its submission completes, so nothing is buffered until the whole batch is done.
+ */
+@Service
+public class BatchSubmissionService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchSubmissionService.class);
+
+    private final AvailityServiceReviewService availityServiceReviewService;
+    private final FhirToAvailityMapper mapper;
+    private final FhirContext fhirContext;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Reads the input of each batch; one thread per running batch
+    private final ExecutorService feederExecutor;
+
+    // Parses and maps claims (mapping may read Patient/Practitioner resources from the FHIR server)
+    private final ExecutorService mapperExecutor;
+
+    @Value("${availity.batch.max-in-flight:16}")
+    private int maxInFlight;
+
+    @Autowired
+    public BatchSubmissionService(AvailityServiceReviewService availityServiceReviewService, FhirToAvailityMapper mapper,
+                                  FhirContext fhirContext, @Value("${availity.batch.mapper-threads:4}") int mapperThreads) {
+        this.availityServiceReviewService = availityServiceReviewService;
+        this.mapper = mapper;
+        this.fhirContext = fhirContext;
+
+        AtomicInteger feederCounter = new AtomicInteger();
+        this.feederExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "batch-feeder-" + feederCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger mapperCounter = new AtomicInteger();
+        this.mapperExecutor = Executors.newFixedThreadPool(mapperThreads, r -> {
+            Thread thread = new Thread(r, "batch-mapper-" + mapperCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Submit a batch of claims
+     *
+     * @param claims The claims as FHIR JSON, read lazily (parsing errors are reported per claim)
+     * @param onResult Receives one result per claim, in completion order; if it throws, no further claims are submitted
+     * @return A future completed once every submitted claim has produced a result
+     */
+    public CompletableFuture<Void> submitBatch(Iterator<String> claims, Consumer<ObjectNode> onResult) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        feederExecutor.execute(() -> feed(claims, onResult, done));
+        return done;
+    }
+
+    /**
+     * Read the input and start a submission for each claim, waiting for a free slot whenever
+     * the in-flight limit is reached
+     */
+    private void feed(Iterator<String> claims, Consumer<ObjectNode> onResult, CompletableFuture<Void> done) {
+        Semaphore slots = new Semaphore(maxInFlight);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        // Starts at 1 for the feeder itself so the batch can't complete while input is still being read
+        AtomicInteger pending = new AtomicInteger(1);
+        int index = 0;
+        int submitted = 0;
+
+        try {
+            while (!cancelled.get() && claims.hasNext()) {
+                String claimJson = claims.next();
+                slots.acquire();
+                if (cancelled.get()) {
+                    slots.release();
+                    break;
+                }
+
+                int claimIndex = index++;
+                pending.incrementAndGet();
+                submitted++;
+                CompletableFuture
+                        .supplyAsync(() -> fhirContext.newJsonParser().parseResource(Claim.class, claimJson), mapperExecutor)
+                        .thenCompose(claim -> {
+                            Map<String, Object> serviceReview = mapper.convertFhirToAvailityAPI(claim);
+                            return availityServiceReviewService.submitServiceReviewAsync(serviceReview)
+                                    .thenApply(id -> successResult(claimIndex, claim, id));
+                        })
+                        .exceptionally(error -> errorResult(claimIndex, error))
+                        .thenAccept(result -> {
+                            try {
+                                if (!cancelled.get()) {
+                                    onResult.accept(result);
+                                }
+                            } catch (Exception e) {
+                                log.warn("Batch result could not be delivered; cancelling the rest of the batch: {}", e.getMessage());
+                                cancelled.set(true);
+                            } finally {
+                                slots.release();
+                                if (pending.decrementAndGet() == 0) {
+                                    done.complete(null);
+                                }
+                            }
+                        });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled.set(true);
+        } catch (Exception e) {
+            // The input itself could not be read; results already in flight are still delivered
+            log.error("Error reading batch input after {} claims", index, e);
+            try {
+                onResult.accept(errorResult(index, e));
+            } catch (Exception ignored) {
+                cancelled.set(true);
+            }
+        }
+
+        log.info("Batch input read: {} claims submitted", submitted);
+        if (pending.decrementAndGet() == 0) {
+            done.complete(null);
+        }
+    }
+
+    private ObjectNode successResult(int index, Claim claim, String id) {
+        ObjectNode result = objectMapper.createObjectNode();
+        result.put("index", index);
+        if (claim.hasIdElement() && claim.getIdElement().hasIdPart()) {
+            result.put("claimId", claim.getIdElement().getIdPart());
+        }
+        result.put("status", "submitted");
+        result.put("resourceId", id);
+        return result;
+    }
+
+    private ObjectNode errorResult(int index, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        ObjectNode result = objectMapper.createObjectNode();
+        result.put("index", index);
+        result.put("status", "error");
+        result.put("error", cause.getMessage());
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        feederExecutor.shutdownNow();
+        mapperExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.fhirpriorauth.service;
+
+import com.example.fhirpriorauth.polling.StatusPoller;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for Availity's status notifications, active with the "callback-simulator" profile.
+ *
+ * For every review the StatusPoller starts polling, it POSTs a signed "In Process" notification to this
+ * application's callback endpoint after in-process-delay-ms, then a final one ("Pended", A4) at a random time
+ * between min-decision-ms and max-decision-ms. The notifications go through the same HTTP endpoint and signature
+ * check as real ones, so callback mode can be tried offline.
+ */
+@Component
+@Profile("callback-simulator")
+public class CallbackSimulator {
+
+    private static final Logger log = LoggerFactory.getLogger(CallbackSimulator.class);
+
+    // Maximum number of reviews to remember notifications were scheduled for
+    private static final int MAX_TRACKED_REVIEWS = 10_000;
+
+    @Value("${availity.callbacks.secret:}")
+    private String secret;
+
+    @Value("${availity.callbacks.simulator.in-process-delay-ms:1000}")
+    private long inProcessDelayMillis;
+
+    @Value("${availity.callbacks.simulator.min-decision-ms:5000}")
+    private long minDecisionMillis;
+
+    @Value("${availity.callbacks.simulator.max-decision-ms:15000}")
+    private long maxDecisionMillis;
+
+    private final StatusPoller statusPoller;
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    private final Set<String> simulated = Collections.newSetFromMap(Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_TRACKED_REVIEWS;
+                }
+            }));
+
+    private ScheduledExecutorService scheduler;
+    private volatile String callbackBaseUrl;
+
+    @Autowired
+    public CallbackSimulator(StatusPoller statusPoller) {
+        this.statusPoller = statusPoller;
+    }
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "callback-simulator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        statusPoller.addListener(this::onUpdate);
+        log.info("Callback simulator active: status notifications are sent to this application");
+    }
+
+    @EventListener
+    public void onWebServerInitialized(WebServerInitializedEvent event) {
+        callbackBaseUrl = "http://localhost:" + event.getWebServer().getPort()
+                + "/prior-auth/callbacks/service-reviews/";
+    }
+
+    /**
+     * Poller listener: schedule the notifications of reviews seen for the first time
+     */
+    private void onUpdate(StatusPoller.Handle handle) {
+        if (handle.isDone() || !simulated.add(handle.getId())) {
+            return;
+        }
+        String id = handle.getId();
+        long decisionMillis = ThreadLocalRandom.current()
+                .nextLong(minDecisionMillis, Math.max(minDecisionMillis, maxDecisionMillis) + 1);
+        scheduler.schedule(() -> send(id, "0", "In Process"), inProcessDelayMillis, TimeUnit.MILLISECONDS);
+        scheduler.schedule(() -> send(id, "A4", "Pended"), decisionMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void send(String id, String statusCode, String status) {
+        if (callbackBaseUrl == null) {
+            log.warn("Callback simulator has no server port yet; dropping notification for service review {}", id);
+            return;
+        }
+        byte[] body = ("{\"id\":\"" + id + "\",\"statusCode\":\"" + statusCode + "\",\"status\":\"" + status + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        String timestamp = String.valueOf(Instant.now().getEpochSecond());
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(callbackBaseUrl + id))
+                .header("Content-Type", "application/json")
+                .header(StatusCallbackService.TIMESTAMP_HEADER, timestamp)
+                .header(StatusCallbackService.SIGNATURE_HEADER, StatusCallbackService.sign(secret, timestamp, id, body))
+                .timeout(Duration.ofSeconds(10))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        log.warn("Callback simulator could not notify service review {}: {}", id, error.getMessage());
+                    } else {
+                        log.info("Callback simulator sent {} for service review {}: HTTP {}", status, id,
+                                response.statusCode());
+                    }
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
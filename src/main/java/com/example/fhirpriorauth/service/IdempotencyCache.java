@@ -0,0 +1,199 @@
+package com.example.fhirpriorauth.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounded TTL cache from a submission's idempotency key to its service review ID.
+ *
+ * The first caller for a key performs the submission; duplicates that arrive while it is in flight
+ * share the same future, and duplicates that arrive later get the cached ID without another call to
+ * Availity. Failed submissions are not cached, so a retry after an error goes upstream again.
+ *
+ * Submissions that are answered once they are queued, rather than when Availity accepts them, claim their key
+ * up front instead: a duplicate gets the claim of the original request, with its request ID and result.
+ */
+@Component
+public class IdempotencyCache {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyCache.class);
+
+    @Value("${availity.idempotency.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    @Value("${availity.idempotency.max-entries:10000}")
+    private int maxEntries;
+
+    // Access-ordered so the least recently used key is evicted first when the cache is full
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public IdempotencyCache(MeterRegistry meterRegistry) {
+        this.hits = Counter.builder("availity.submit.idempotency")
+                .description("Submissions answered from the idempotency cache (hit) or sent to Availity (miss)")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("availity.submit.idempotency")
+                .description("Submissions answered from the idempotency cache (hit) or sent to Availity (miss)")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get the result of the submission with the given key, submitting it only if no live entry exists
+     *
+     * @param key The idempotency key
+     * @param submission Performs the submission and returns a future with the service review ID
+     * @return A future completed with the service review ID
+     */
+    public CompletableFuture<String> submitOnce(String key, Supplier<CompletableFuture<String>> submission) {
+        Entry entry;
+        synchronized (entries) {
+            Entry existing = entries.get(key);
+            long now = System.nanoTime();
+            if (existing != null && now - existing.expiresAtNanos < 0) {
+                hits.increment();
+                log.info("Duplicate submission for idempotency key {}; reusing the original submission", key);
+                return existing.result;
+            }
+            entry = new Entry(new CompletableFuture<>(), null, now + TimeUnit.SECONDS.toNanos(ttlSeconds));
+            entries.put(key, entry);
+        }
+        misses.increment();
+
+        CompletableFuture<String> submitted;
+        try {
+            submitted = submission.get();
+        } catch (RuntimeException e) {
+            submitted = CompletableFuture.failedFuture(e);
+        }
+
+        submitted.whenComplete((id, error) -> {
+            if (error != null) {
+                synchronized (entries) {
+                    entries.remove(key, entry);
+                }
+                entry.result.completeExceptionally(error);
+            } else {
+                entry.result.complete(id);
+            }
+        });
+        return entry.result;
+    }
+
+    /**
+     * Claim a key for a submission that is queued before it is sent. If a live claim exists, that one is
+     * returned as a duplicate; otherwise the caller owns the new claim, and must complete its request ID and
+     * then pass the submission's outcome to {@link #track}.
+     *
+     * @param key The idempotency key
+     * @return The new claim, or the original request's claim if this is a duplicate
+     */
+    public Claim claim(String key) {
+        String claimKey = "queued:" + key;
+        synchronized (entries) {
+            Entry existing = entries.get(claimKey);
+            long now = System.nanoTime();
+            if (existing != null && now - existing.expiresAtNanos < 0) {
+                hits.increment();
+                log.info("Duplicate submission for idempotency key {}; answering with the original request", key);
+                return new Claim(claimKey, existing, true);
+            }
+            Entry entry = new Entry(new CompletableFuture<>(), new CompletableFuture<>(),
+                    now + TimeUnit.SECONDS.toNanos(ttlSeconds));
+            entries.put(claimKey, entry);
+            misses.increment();
+            return new Claim(claimKey, entry, false);
+        }
+    }
+
+    /**
+     * Complete an owned claim with the outcome of its submission. A failed submission releases the key,
+     * so a retry is queued again.
+     *
+     * @param claim The claim returned by {@link #claim} for this request
+     * @param outcome The future completed with the service review ID, or the failure
+     */
+    public void track(Claim claim, CompletableFuture<String> outcome) {
+        Entry entry = claim.entry;
+        outcome.whenComplete((id, error) -> {
+            if (error != null) {
+                synchronized (entries) {
+                    entries.remove(claim.key, entry);
+                }
+                entry.requestId.completeExceptionally(error);
+                entry.result.completeExceptionally(error);
+            } else {
+                entry.result.complete(id);
+            }
+        });
+    }
+
+    /**
+     * A claimed idempotency key: the request that owns it and the result of its submission
+     */
+    public static final class Claim {
+        private final String key;
+        private final Entry entry;
+        private final boolean duplicate;
+
+        private Claim(String key, Entry entry, boolean duplicate) {
+            this.key = key;
+            this.entry = entry;
+            this.duplicate = duplicate;
+        }
+
+        /**
+         * Whether the key was already claimed by an earlier request
+         */
+        public boolean isDuplicate() {
+            return duplicate;
+        }
+
+        /**
+         * Completed with the ID of the request that owns the key
+         */
+        public CompletableFuture<String> getRequestId() {
+            return entry.requestId;
+        }
+
+        /**
+         * Completed with the service review ID once Availity accepts the owner's submission
+         */
+        public CompletableFuture<String> getResult() {
+            return entry.result;
+        }
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<String> result;
+        // Only set on claims
+        private final CompletableFuture<String> requestId;
+        private final long expiresAtNanos;
+
+        private Entry(CompletableFuture<String> result, CompletableFuture<String> requestId, long expiresAtNanos) {
+            this.result = result;
+            this.requestId = requestId;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
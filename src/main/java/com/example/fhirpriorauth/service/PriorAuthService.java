@@ -3,7 +3,15 @@ package com.example.fhirpriorauth.service;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.server.exceptions.AuthenticationException;
 import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import com.example.fhirpriorauth.config.AuthInterceptor;
+import com.example.fhirpriorauth.resilience.AvailityRateLimiter;
+import com.example.fhirpriorauth.resilience.RateLimitExceededException;
+import com.example.fhirpriorauth.resilience.RetryPolicy;
+import com.example.fhirpriorauth.resilience.UpstreamGuard;
+import com.example.fhirpriorauth.resilience.UpstreamGuards;
+import com.example.fhirpriorauth.resilience.UpstreamUnavailableException;
 import org.hl7.fhir.r4.model.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,6 +20,7 @@ import org.springframework.stereotype.Service;
 
 import java.util.Date;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 @Service
 public class PriorAuthService {
@@ -20,11 +29,18 @@ public class PriorAuthService {
 
     private final IGenericClient fhirClient;
     private final FhirContext fhirContext;
+    private final AuthInterceptor authInterceptor;
+    private final UpstreamGuard fhirGuard;
+    private final RetryPolicy retryPolicy;
 
     @Autowired
-    public PriorAuthService(IGenericClient fhirClient, FhirContext fhirContext) {
+    public PriorAuthService(IGenericClient fhirClient, FhirContext fhirContext, AuthInterceptor authInterceptor,
+                            UpstreamGuards upstreamGuards, RetryPolicy retryPolicy) {
         this.fhirClient = fhirClient;
         this.fhirContext = fhirContext;
+        this.authInterceptor = authInterceptor;
+        this.fhirGuard = upstreamGuards.forUpstream(UpstreamGuards.FHIR);
+        this.retryPolicy = retryPolicy;
     }
 
     /**
@@ -42,70 +58,61 @@ public class PriorAuthService {
         // Prepare the claim with all required fields
         prepareClaim(claim, requestId);
 
-        // Log the request details
-        log.info("Sending to Availity FHIR server: {}" , fhirClient.getServerBase());
-        String claimJson = fhirContext.newJsonParser().setPrettyPrint(true).encodeResourceToString(claim);
-        log.debug("Claim payload: {}", claimJson);
-
-        // Print the request details to the console
-        System.out.println("→ PRIOR AUTH REQUEST: Sending prior authorization request to Availity");
-        System.out.println("   Server: " + fhirClient.getServerBase());
-        System.out.println("   Claim ID: " + claim.getId());
-        System.out.println("   Patient: " + claim.getPatient().getDisplay());
-        System.out.println("   Provider: " + claim.getProvider().getDisplay());
-        System.out.println("   Insurer: " + claim.getInsurer().getDisplay());
-
-        // For debugging, print a snippet of the JSON payload
-        System.out.println("   Payload snippet: " + claimJson.substring(0, Math.min(100, claimJson.length())) + "...");
+        // Log the request details (the claim is only encoded when debug logging is on)
+        log.atInfo().setMessage("Sending prior authorization request to Availity FHIR server")
+                .addKeyValue("server", fhirClient.getServerBase())
+                .addKeyValue("claimId", claim.getId())
+                .addKeyValue("patient", claim.getPatient().getDisplay())
+                .addKeyValue("provider", claim.getProvider().getDisplay())
+                .addKeyValue("insurer", claim.getInsurer().getDisplay())
+                .log();
+        log.atDebug().setMessage("Claim payload: {}")
+                .addArgument(() -> fhirContext.newJsonParser().setPrettyPrint(true).encodeResourceToString(claim))
+                .log();
 
         try {
             // Submit the claim to the FHIR server
-            MethodOutcome outcome = fhirClient.create()
-                .resource(claim)
-                .prettyPrint()
-                .encodedJson()
-                .execute();
+            MethodOutcome outcome = withAuthRetry(AvailityRateLimiter.SUBMIT, payerIdOf(claim), false,
+                () -> fhirClient.create()
+                    .resource(claim)
+                    .prettyPrint()
+                    .encodedJson()
+                    .execute());
 
             String id = outcome.getId() != null ? outcome.getId().getValue() : requestId;
-            log.info("Created resource ID: {}", id);
-
-            // Print a clear success message
-            System.out.println("✅ PRIOR AUTH SUBMITTED: Successfully submitted prior authorization to Availity");
-            System.out.println("   Resource ID: " + id);
-            System.out.println("   Server: " + fhirClient.getServerBase());
-
-            // If we got a response body, print it
+            log.atInfo().setMessage("Submitted prior authorization to Availity")
+                    .addKeyValue("resourceId", id)
+                    .addKeyValue("server", fhirClient.getServerBase())
+                    .log();
             if (outcome.getResource() != null) {
-                String responseJson = fhirContext.newJsonParser().setPrettyPrint(true).encodeResourceToString(outcome.getResource());
-                System.out.println("   Response snippet: " + responseJson.substring(0, Math.min(100, responseJson.length())) + "...");
+                log.atDebug().setMessage("Prior authorization response: {}")
+                        .addArgument(() -> fhirContext.newJsonParser().encodeResourceToString(outcome.getResource()))
+                        .log();
             }
 
             // Process the response
             return processClaimResponse(outcome, id);
+        } catch (UpstreamUnavailableException e) {
+            log.warn("Not submitting prior auth: {}", e.getMessage());
+            throw e;
         } catch (BaseServerResponseException e) {
-            log.error("FHIR server error: {} - {}", e.getStatusCode(), e.getMessage());
-
-            // Print a clear error message
-            System.out.println("❌ PRIOR AUTH ERROR: Server returned an error");
-            System.out.println("   Status code: " + e.getStatusCode());
-            System.out.println("   Error: " + e.getMessage());
-            System.out.println("   Server: " + fhirClient.getServerBase());
-
-            // If there's an operation outcome, print it
-            if (e.getOperationOutcome() != null) {
-                String outcomeJson = fhirContext.newJsonParser().setPrettyPrint(true).encodeResourceToString(e.getOperationOutcome());
-                System.out.println("   Operation outcome: " + outcomeJson);
-            }
+            log.atError().setMessage("FHIR server error: {} - {}")
+                    .addArgument(e.getStatusCode())
+                    .addArgument(e.getMessage())
+                    .addKeyValue("server", fhirClient.getServerBase())
+                    .addKeyValue("operationOutcome", () -> e.getOperationOutcome() != null
+                            ? fhirContext.newJsonParser().encodeResourceToString(e.getOperationOutcome())
+                            : null)
+                    .log();
 
             return createErrorResponse("Server error: " + e.getStatusCode() + " - " + e.getMessage());
         } catch (Exception e) {
             String rootCause = getRootCauseMessage(e);
-            log.error("Error submitting prior auth to Availity: {}", rootCause, e);
-
-            // Print a clear error message
-            System.out.println("❌ PRIOR AUTH ERROR: Exception while submitting prior authorization");
-            System.out.println("   Error: " + rootCause);
-            System.out.println("   Server: " + fhirClient.getServerBase());
+            log.atError().setMessage("Error submitting prior auth to Availity: {}")
+                    .addArgument(rootCause)
+                    .addKeyValue("server", fhirClient.getServerBase())
+                    .setCause(e)
+                    .log();
 
             return createErrorResponse("Connection error: " + rootCause);
         }
@@ -212,19 +219,19 @@ public class PriorAuthService {
 
         try {
             // First try to get the claim itself to verify it exists
-            Claim claim = fhirClient.read()
+            Claim claim = withAuthRetry(AvailityRateLimiter.STATUS, null, true, () -> fhirClient.read()
                     .resource(Claim.class)
                     .withId(claimId)
-                    .execute();
+                    .execute());
 
             log.info("Found claim with ID: {}, status: {}", claimId, claim.getStatus());
 
             // Search for ClaimResponse resources related to the claim
-            Bundle bundle = fhirClient.search()
+            Bundle bundle = withAuthRetry(AvailityRateLimiter.STATUS, null, true, () -> fhirClient.search()
                     .forResource(ClaimResponse.class)
                     .where(ClaimResponse.REQUEST.hasId(claimId))
                     .returnBundle(Bundle.class)
-                    .execute();
+                    .execute());
 
             if (bundle.getEntry().isEmpty()) {
                 log.warn("No response found for claim ID: {}", claimId);
@@ -243,6 +250,9 @@ public class PriorAuthService {
             ClaimResponse response = (ClaimResponse) bundle.getEntryFirstRep().getResource();
             log.info("Found response for claim ID: {}, outcome: {}", claimId, response.getOutcome());
             return response;
+        } catch (UpstreamUnavailableException e) {
+            log.warn("Not checking prior auth status: {}", e.getMessage());
+            throw e;
         } catch (BaseServerResponseException e) {
             log.error("FHIR server error: {} - {}", e.getStatusCode(), e.getMessage());
             return createErrorResponse("Failed to check status: " + e.getMessage());
@@ -263,10 +273,10 @@ public class PriorAuthService {
 
         try {
             // First read the existing claim to get all its data
-            Claim existingClaim = fhirClient.read()
+            Claim existingClaim = withAuthRetry(AvailityRateLimiter.STATUS, null, true, () -> fhirClient.read()
                     .resource(Claim.class)
                     .withId(claimId)
-                    .execute();
+                    .execute());
 
             // Update the status to cancelled
             existingClaim.setStatus(Claim.ClaimStatus.CANCELLED);
@@ -278,9 +288,9 @@ public class PriorAuthService {
             existingClaim.addExtension(cancelExtension);
 
             // Update the claim
-            MethodOutcome outcome = fhirClient.update()
+            MethodOutcome outcome = withAuthRetry(AvailityRateLimiter.SUBMIT, null, true, () -> fhirClient.update()
                     .resource(existingClaim)
-                    .execute();
+                    .execute());
 
             log.info("Successfully cancelled prior authorization: {}, version: {}", claimId,
                     outcome.getId().getVersionIdPart());
@@ -295,9 +305,13 @@ public class PriorAuthService {
             cancelResponse.setRequest(new Reference("Claim/" + claimId));
 
             // Submit the cancellation response
-            fhirClient.create().resource(cancelResponse).execute();
+            withAuthRetry(AvailityRateLimiter.SUBMIT, null, false,
+                    () -> fhirClient.create().resource(cancelResponse).execute());
 
             return true;
+        } catch (UpstreamUnavailableException e) {
+            log.warn("Not cancelling prior auth: {}", e.getMessage());
+            throw e;
         } catch (BaseServerResponseException e) {
             log.error("FHIR server error: {} - {}", e.getStatusCode(), e.getMessage());
             return false;
@@ -341,6 +355,64 @@ public class PriorAuthService {
         return id;
     }
 
+    /**
+     * Run a FHIR client call, replaying it exactly once if Availity rejects the access token.
+     * AuthInterceptor has already invalidated the rejected token, so the replay uses a fresh one.
+     * Each attempt waits for the payer's rate limit and fetches its token first, then goes through the FHIR
+     * upstream guard, which fails fast when the server is struggling; the guard's latency samples therefore
+     * measure the server alone. Transient failures (e.g. 503 or 429) are retried with backoff by the RetryPolicy.
+     *
+     * @param endpoint The endpoint class of the call, AvailityRateLimiter.SUBMIT or STATUS
+     * @param payerId The payer the call is for, or null for calls not tied to a payer
+     * @param idempotent Whether the call is safe to repeat if the server may already have processed it
+     *                   (reads, searches and updates, but not creates)
+     * @param call The FHIR client call
+     * @return The result of the call
+     */
+    private <T> T withAuthRetry(String endpoint, String payerId, boolean idempotent, Supplier<T> call) {
+        Supplier<T> guardedCall = () -> retryPolicy.execute(UpstreamGuards.FHIR, idempotent, () -> {
+            authInterceptor.authorize(endpoint, payerId);
+            try {
+                return fhirGuard.execute(call, PriorAuthService::isUpstreamFailure);
+            } finally {
+                authInterceptor.clearAuthorization();
+            }
+        });
+        try {
+            return guardedCall.get();
+        } catch (AuthenticationException e) {
+            log.warn("Availity rejected the access token; retrying once with a refreshed token");
+            return guardedCall.get();
+        }
+    }
+
+    /**
+     * Whether a FHIR client exception means the server is failing, as opposed to rejecting the request (4xx)
+     */
+    private static boolean isUpstreamFailure(RuntimeException e) {
+        if (e instanceof RateLimitExceededException) {
+            return false;
+        }
+        return !(e instanceof BaseServerResponseException) || ((BaseServerResponseException) e).getStatusCode() >= 500;
+    }
+
+    /**
+     * Get the payer ID of a claim, used to pick the Availity account to submit with
+     *
+     * @param claim The claim
+     * @return The insurer's identifier or reference ID, or an empty string if the claim has neither
+     */
+    private String payerIdOf(Claim claim) {
+        Reference insurer = claim.getInsurer();
+        if (insurer.hasIdentifier() && insurer.getIdentifier().hasValue()) {
+            return insurer.getIdentifier().getValue();
+        }
+        if (insurer.hasReferenceElement() && insurer.getReferenceElement().hasIdPart()) {
+            return insurer.getReferenceElement().getIdPart();
+        }
+        return "";
+    }
+
     /**
      * Gets the root cause message from an exception
      *
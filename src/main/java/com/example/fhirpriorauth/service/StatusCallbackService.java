@@ -0,0 +1,225 @@
+package com.example.fhirpriorauth.service;
+
+import com.example.fhirpriorauth.polling.StatusPoller;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Receives service review status notifications pushed by Availity instead of polling for them.
+ *
+ * A notification is the service review JSON, as a status check returns it, POSTed for one review ID. It is
+ * signed with HMAC-SHA256 over "timestamp.id.body" using the shared secret, and the timestamp must be within
+ * max-skew-seconds, so a captured notification cannot be replayed later or for another review. Within that
+ * window, the last notification applied to each review is remembered: one signed earlier than it, or the same
+ * notification again, is rejected, and an "In Process" notification never replaces a final status. A verified
+ * notification updates the status cache, wakes the review's poll waiters (or, for a review that is no longer
+ * polled, its registry entry) and drops its polling to the safety-net interval.
+ */
+@Service
+public class StatusCallbackService {
+
+    private static final Logger log = LoggerFactory.getLogger(StatusCallbackService.class);
+
+    // Request headers carrying the signature ("sha256=<hex>") and the epoch seconds it was made at
+    public static final String SIGNATURE_HEADER = "X-Callback-Signature";
+    public static final String TIMESTAMP_HEADER = "X-Callback-Timestamp";
+
+    private static final String SIGNATURE_PREFIX = "sha256=";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    // Maximum number of reviews to remember the last applied notification of
+    private static final int MAX_TRACKED_REVIEWS = 10_000;
+
+    @Value("${availity.callbacks.secret:}")
+    private String secret;
+
+    @Value("${availity.callbacks.max-skew-seconds:300}")
+    private long maxSkewSeconds;
+
+    private final AvailityServiceReviewService serviceReviewService;
+    private final StatusPoller statusPoller;
+    private final AvailityPollingService pollingService;
+
+    private final Counter applied;
+    private final Counter rejected;
+    private final Counter stale;
+
+    // Last notification applied to each review, to reject replays and out-of-order deliveries
+    private final Map<String, AppliedNotification> lastApplied = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, AppliedNotification> eldest) {
+                    return size() > MAX_TRACKED_REVIEWS;
+                }
+            });
+
+    @Autowired
+    public StatusCallbackService(AvailityServiceReviewService serviceReviewService, StatusPoller statusPoller,
+                                 AvailityPollingService pollingService, MeterRegistry meterRegistry) {
+        this.serviceReviewService = serviceReviewService;
+        this.statusPoller = statusPoller;
+        this.pollingService = pollingService;
+        this.applied = Counter.builder("availity.callbacks.received")
+                .description("Status notifications applied, rejected for a bad signature or body, or ignored as stale")
+                .tag("result", "applied")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("availity.callbacks.received")
+                .description("Status notifications applied, rejected for a bad signature or body, or ignored as stale")
+                .tag("result", "rejected")
+                .register(meterRegistry);
+        this.stale = Counter.builder("availity.callbacks.received")
+                .description("Status notifications applied, rejected for a bad signature or body, or ignored as stale")
+                .tag("result", "stale")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether a shared secret is configured; without one every notification is rejected
+     */
+    public boolean isConfigured() {
+        return secret != null && !secret.isBlank();
+    }
+
+    /**
+     * Verify a notification's signature and timestamp
+     *
+     * @param id The ID of the service review the notification is for
+     * @param timestamp The timestamp header, in epoch seconds
+     * @param signature The signature header
+     * @param body The raw notification body
+     * @return Whether the notification is authentic and recent
+     */
+    public boolean verify(String id, String timestamp, String signature, byte[] body) {
+        if (!isConfigured() || timestamp == null || signature == null || !signature.startsWith(SIGNATURE_PREFIX)) {
+            rejected.increment();
+            return false;
+        }
+        long epochSeconds;
+        try {
+            epochSeconds = Long.parseLong(timestamp.trim());
+        } catch (NumberFormatException e) {
+            rejected.increment();
+            return false;
+        }
+        if (Math.abs(Instant.now().getEpochSecond() - epochSeconds) > maxSkewSeconds) {
+            log.warn("Status notification for service review {} is outside the allowed clock skew", id);
+            rejected.increment();
+            return false;
+        }
+
+        byte[] expected = sign(secret, timestamp.trim(), id, body).getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = signature.trim().getBytes(StandardCharsets.US_ASCII);
+        // Constant-time comparison, so the signature cannot be guessed byte by byte
+        if (!MessageDigest.isEqual(expected, actual)) {
+            log.warn("Status notification for service review {} has an invalid signature", id);
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Apply a verified notification, unless it is older than (or the same as) the last one applied to the review.
+     * Notifications are applied one at a time, so the order check and the update cannot interleave; they are
+     * rare enough for that not to matter.
+     *
+     * @param id The ID of the service review
+     * @param timestamp The verified timestamp header, in epoch seconds
+     * @param signature The verified signature header
+     * @param body The notification body
+     * @return The mapped status of the review
+     * @throws IllegalArgumentException If the body is not a service review status
+     * @throws IllegalStateException If the notification is a replay, older than the last one applied, or
+     *         "In Process" for a review that already has a final status
+     */
+    public String apply(String id, String timestamp, String signature, byte[] body) {
+        long epochSeconds = Long.parseLong(timestamp.trim());
+        String status;
+        synchronized (lastApplied) {
+            AppliedNotification previous = lastApplied.get(id);
+            if (previous != null && epochSeconds < previous.epochSeconds) {
+                stale.increment();
+                throw new IllegalStateException("Notification is older than the last one applied");
+            }
+            if (previous != null && epochSeconds == previous.epochSeconds
+                    && previous.signature.equals(signature.trim())) {
+                stale.increment();
+                throw new IllegalStateException("Notification was already applied");
+            }
+            try {
+                status = serviceReviewService.applyStatusNotification(id, body,
+                        previous != null ? previous.status : null);
+            } catch (IllegalArgumentException e) {
+                rejected.increment();
+                throw e;
+            } catch (IllegalStateException e) {
+                stale.increment();
+                throw e;
+            }
+            lastApplied.put(id, new AppliedNotification(epochSeconds, signature.trim(), status));
+        }
+
+        boolean polled = statusPoller.onCallback(id, status);
+        if (!polled && !StatusPoller.IN_PROCESS.equals(status)) {
+            pollingService.recordCallback(id, status);
+        }
+        applied.increment();
+        log.atInfo().setMessage("Status notification applied")
+                .addKeyValue("resourceId", id)
+                .addKeyValue("status", status)
+                .addKeyValue("polled", polled)
+                .log();
+        return status;
+    }
+
+    /**
+     * The last notification applied to a review
+     */
+    private static final class AppliedNotification {
+        final long epochSeconds;
+        final String signature;
+        final String status;
+
+        AppliedNotification(long epochSeconds, String signature, String status) {
+            this.epochSeconds = epochSeconds;
+            this.signature = signature;
+            this.status = status;
+        }
+    }
+
+    /**
+     * Compute the signature header value of a notification
+     *
+     * @param secret The shared secret
+     * @param timestamp The timestamp header value
+     * @param id The ID of the service review
+     * @param body The notification body
+     * @return "sha256=" followed by the hex HMAC-SHA256 of "timestamp.id.body"
+     */
+    public static String sign(String secret, String timestamp, String id, byte[] body) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM));
+            mac.update((timestamp + "." + id + ".").getBytes(StandardCharsets.UTF_8));
+            return SIGNATURE_PREFIX + HexFormat.of().formatHex(mac.doFinal(body));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+}
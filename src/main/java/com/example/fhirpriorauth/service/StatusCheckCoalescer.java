@@ -0,0 +1,82 @@
+package com.example.fhirpriorauth.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight coalescing of status checks, keyed by service review.
+ *
+ * The first caller for a review sends the status GET; callers that arrive while it is in flight, or within
+ * linger-ms after it succeeded, share its parsed result instead of sending their own. Failed checks are
+ * forgotten at once, so the next caller goes upstream again. Each caller gets its own copy of the shared
+ * future, so one caller timing out or cancelling does not affect the others.
+ */
+@Component
+public class StatusCheckCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(StatusCheckCoalescer.class);
+
+    @Value("${availity.status.coalesce.linger-ms:100}")
+    private long lingerMillis;
+
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter coalesced;
+
+    @Autowired
+    public StatusCheckCoalescer(MeterRegistry meterRegistry) {
+        this.coalesced = Counter.builder("availity.status.coalesced")
+                .description("Status checks that shared another caller's upstream request instead of sending their own")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get the status of a review, checking it upstream only if no check of it is in flight or lingering
+     *
+     * @param key The status cache key of the review
+     * @param check Sends the status check and returns a future with the mapped status
+     * @return A future completed with the mapped status
+     */
+    public CompletableFuture<String> checkOnce(String key, Supplier<CompletableFuture<String>> check) {
+        CompletableFuture<String> created = new CompletableFuture<>();
+        CompletableFuture<String> shared = inFlight.putIfAbsent(key, created);
+        if (shared != null) {
+            coalesced.increment();
+            log.debug("Status check of {} joined the one in flight", key);
+            return shared.copy();
+        }
+
+        CompletableFuture<String> checked;
+        try {
+            checked = check.get();
+        } catch (RuntimeException e) {
+            checked = CompletableFuture.failedFuture(e);
+        }
+
+        checked.whenComplete((status, error) -> {
+            if (error != null || lingerMillis <= 0) {
+                inFlight.remove(key, created);
+            } else {
+                Executor later = CompletableFuture.delayedExecutor(lingerMillis, TimeUnit.MILLISECONDS);
+                later.execute(() -> inFlight.remove(key, created));
+            }
+            if (error != null) {
+                created.completeExceptionally(error);
+            } else {
+                created.complete(status);
+            }
+        });
+        return created.copy();
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.fhirpriorauth.service;
+
+import com.example.fhirpriorauth.model.ServiceReviewStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded TTL cache of the last status response of each service review.
+ *
+ * Status checks for a review within fresh-ms of the last one are answered from the cache without another
+ * GET to Availity, and the response JSON shown in the UI is read per review instead of from whichever
+ * review was checked last. Later checks send the cached ETag / Last-Modified as a conditional GET, and a
+ * 304 refreshes the cached entry. Entries expire after ttl-seconds; when the cache holds more than max-entries
+ * or max-bytes (estimated from the retained JSON), the least recently used entries are evicted first.
+ */
+@Component
+public class StatusResponseCache {
+
+    // Rough per-entry overhead beyond the retained JSON: map entry, key, status fields
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    @Value("${availity.status-cache.fresh-ms:5000}")
+    private long freshMillis;
+
+    @Value("${availity.status-cache.ttl-seconds:900}")
+    private long ttlSeconds;
+
+    @Value("${availity.status-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${availity.status-cache.max-bytes:33554432}")
+    private long maxBytes;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter notModified;
+    private final Counter modified;
+    private final Counter bytesSaved;
+
+    @Autowired
+    public StatusResponseCache(MeterRegistry meterRegistry) {
+        this.hits = Counter.builder("availity.status.cache")
+                .description("Status checks answered from the cache (hit) or sent to Availity (miss)")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("availity.status.cache")
+                .description("Status checks answered from the cache (hit) or sent to Availity (miss)")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.notModified = Counter.builder("availity.status.conditional")
+                .description("Conditional status GETs answered 304 (not-modified) or with a new body (modified)")
+                .tag("result", "not-modified")
+                .register(meterRegistry);
+        this.modified = Counter.builder("availity.status.conditional")
+                .description("Conditional status GETs answered 304 (not-modified) or with a new body (modified)")
+                .tag("result", "modified")
+                .register(meterRegistry);
+        this.bytesSaved = Counter.builder("availity.status.bytes.saved")
+                .description("Status response body bytes not downloaded again thanks to a 304")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("availity.status.cache.entries", this, StatusResponseCache::size)
+                .description("Service reviews with a cached status response")
+                .register(meterRegistry);
+        Gauge.builder("availity.status.cache.bytes", this, StatusResponseCache::weightBytes)
+                .description("Estimated size of the cached status responses")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get a review's cached status if it was fetched within the freshness window, counting a hit or miss
+     *
+     * @param reviewKey The review ID (prefixed for mock scenario checks)
+     * @return The cached response, or null if there is none or it is stale
+     */
+    public Entry getFresh(String reviewKey) {
+        Entry entry = get(reviewKey);
+        if (entry != null && System.nanoTime() - entry.fetchedAtNanos < TimeUnit.MILLISECONDS.toNanos(freshMillis)) {
+            hits.increment();
+            return entry;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Get a review's cached status response, however old, as long as it has not expired
+     *
+     * @param reviewKey The review ID (prefixed for mock scenario checks)
+     * @return The cached response, or null
+     */
+    public Entry get(String reviewKey) {
+        synchronized (entries) {
+            Entry entry = entries.get(reviewKey);
+            if (entry != null && isExpired(entry, System.nanoTime())) {
+                remove(reviewKey);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Cache a review's status response
+     *
+     * @param reviewKey The review ID (prefixed for mock scenario checks)
+     * @param mappedStatus Our internal status code
+     * @param status The status fields from the response
+     * @param responseJson The response body, or null if it was not retained
+     * @param validators The response's ETag and Last-Modified, for conditional GETs
+     * @param bodyBytes The size of the response body
+     */
+    public void put(String reviewKey, String mappedStatus, ServiceReviewStatus status, String responseJson,
+                    Validators validators, long bodyBytes) {
+        put(reviewKey, new Entry(mappedStatus, status, responseJson, validators, bodyBytes, System.nanoTime()));
+    }
+
+    /**
+     * Count a conditional status GET that got a new body because the review changed
+     */
+    public void recordModified() {
+        modified.increment();
+    }
+
+    /**
+     * Mark a review's cached response as just confirmed unchanged (a 304), restarting its freshness and TTL,
+     * and count the 304 and the body bytes it saved
+     *
+     * @param reviewKey The review ID (prefixed for mock scenario checks)
+     * @param validators The 304 response's validators, which replace the cached ones if present
+     * @return The refreshed entry, or null if it was evicted in the meantime
+     */
+    public Entry refresh(String reviewKey, Validators validators) {
+        Entry cached = get(reviewKey);
+        if (cached == null) {
+            return null;
+        }
+        Validators merged = new Validators(
+                validators.getEtag() != null ? validators.getEtag() : cached.validators.getEtag(),
+                validators.getLastModified() != null ? validators.getLastModified() : cached.validators.getLastModified());
+        Entry refreshed = new Entry(cached.mappedStatus, cached.status, cached.responseJson, merged, cached.bodyBytes,
+                System.nanoTime());
+        put(reviewKey, refreshed);
+        notModified.increment();
+        bytesSaved.increment(cached.bodyBytes);
+        return refreshed;
+    }
+
+    private void put(String reviewKey, Entry entry) {
+        synchronized (entries) {
+            Entry previous = entries.put(reviewKey, entry);
+            if (previous != null) {
+                totalBytes -= previous.weightBytes;
+            }
+            totalBytes += entry.weightBytes;
+            evict();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long weightBytes() {
+        synchronized (entries) {
+            return totalBytes;
+        }
+    }
+
+    /**
+     * Drop expired entries from the least recently used end, then evict until within both limits
+     */
+    private void evict() {
+        long now = System.nanoTime();
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            boolean overLimit = entries.size() > maxEntries || totalBytes > maxBytes;
+            if (!overLimit && !isExpired(eldest, now)) {
+                break;
+            }
+            iterator.remove();
+            totalBytes -= eldest.weightBytes;
+        }
+    }
+
+    private void remove(String reviewKey) {
+        Entry removed = entries.remove(reviewKey);
+        if (removed != null) {
+            totalBytes -= removed.weightBytes;
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.fetchedAtNanos >= TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    /**
+     * A cached status response
+     */
+    public static final class Entry {
+        private final String mappedStatus;
+        private final ServiceReviewStatus status;
+        private final String responseJson;
+        private final Validators validators;
+        private final long bodyBytes;
+        private final long fetchedAtNanos;
+        private final long weightBytes;
+
+        private Entry(String mappedStatus, ServiceReviewStatus status, String responseJson, Validators validators,
+                      long bodyBytes, long fetchedAtNanos) {
+            this.mappedStatus = mappedStatus;
+            this.status = status;
+            this.responseJson = responseJson;
+            this.validators = validators;
+            this.bodyBytes = bodyBytes;
+            this.fetchedAtNanos = fetchedAtNanos;
+            this.weightBytes = ENTRY_OVERHEAD_BYTES + (responseJson != null ? 2L * responseJson.length() : 0);
+        }
+
+        public String getMappedStatus() {
+            return mappedStatus;
+        }
+
+        public ServiceReviewStatus getStatus() {
+            return status;
+        }
+
+        /**
+         * Get the response body, or null if it was not retained
+         */
+        public String getResponseJson() {
+            return responseJson;
+        }
+
+        public Validators getValidators() {
+            return validators;
+        }
+
+        /**
+         * Get the size of the full response body, i.e. what a 304 saves downloading
+         */
+        public long getBodyBytes() {
+            return bodyBytes;
+        }
+    }
+
+    /**
+     * The ETag and Last-Modified of a response, either of which may be null
+     */
+    public static final class Validators {
+        public static final Validators NONE = new Validators(null, null);
+
+        private final String etag;
+        private final String lastModified;
+
+        public Validators(String etag, String lastModified) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public boolean isEmpty() {
+            return etag == null && lastModified == null;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.example.fhirpriorauth.service;
+
+import com.example.fhirpriorauth.model.PollingStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes service review status changes to browsers as Server-Sent Events.
+ *
+ * Streams subscribe to review IDs; each review is polled once by the polling registry however many streams
+ * watch it, and an event is sent only when its mapped status (or completion) changes. Event IDs increase
+ * globally, so a client reconnecting with Last-Event-ID gets the latest event of each of its reviews that
+ * it has not seen yet. Idle streams get a heartbeat comment every heartbeat-ms to keep proxies from closing them.
+ *
+ * Events are only queued by the polling pipeline: each stream has a queue of at most buffer-size events, written
+ * to its client by the sender threads, so a slow client never holds up status updates or other streams. A stream
+ * whose queue fills up is closed; its client reconnects with Last-Event-ID and gets the latest status of each review.
+ */
+@Service
+public class StatusStreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(StatusStreamService.class);
+
+    // Maximum number of reviews to remember the last event of, for resuming streams
+    private static final int MAX_TRACKED_REVIEWS = 10_000;
+
+    @Value("${availity.polling.stream.heartbeat-ms:15000}")
+    private long heartbeatMillis;
+
+    @Value("${availity.polling.stream.timeout-ms:1800000}")
+    private long timeoutMillis;
+
+    @Value("${availity.polling.stream.buffer-size:64}")
+    private int bufferSize;
+
+    @Value("${availity.polling.stream.sender-threads:4}")
+    private int senderThreads;
+
+    private final AvailityPollingService pollingService;
+
+    private final AtomicLong nextEventId = new AtomicLong();
+
+    // Last event of each review, replayed to new and resuming streams
+    private final Map<String, StatusEvent> lastEvents = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, StatusEvent> eldest) {
+                    return size() > MAX_TRACKED_REVIEWS;
+                }
+            });
+
+    private final ConcurrentHashMap<String, Set<Subscription>> subscribersById = new ConcurrentHashMap<>();
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService heartbeat;
+    private ExecutorService sender;
+
+    private final Counter eventsSent;
+    private final Counter overflowed;
+
+    @Autowired
+    public StatusStreamService(AvailityPollingService pollingService, MeterRegistry meterRegistry) {
+        this.pollingService = pollingService;
+        this.eventsSent = meterRegistry.counter("availity.polling.stream.events");
+        this.overflowed = Counter.builder("availity.polling.stream.overflowed")
+                .description("Streams closed because their client fell more than buffer-size events behind")
+                .register(meterRegistry);
+        Gauge.builder("availity.polling.stream.subscribers", subscriptions, Set::size)
+                .description("Open status event streams")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        pollingService.addListener(this::onStatus);
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "status-stream-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::sendHeartbeats, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        AtomicInteger senderCount = new AtomicInteger();
+        sender = Executors.newFixedThreadPool(senderThreads, r -> {
+            Thread thread = new Thread(r, "status-stream-sender-" + senderCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Open a stream of status events for some reviews, starting to poll the ones not yet in the registry
+     *
+     * @param ids The IDs of the service reviews
+     * @param lastEventId The ID of the last event the client saw, or 0 for a new stream
+     * @param useMockScenario Whether reviews not yet polled are checked with the mock scenario
+     * @return The emitter to return from the controller
+     */
+    public SseEmitter subscribe(List<String> ids, long lastEventId, boolean useMockScenario) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscription subscription = new Subscription(emitter, ids, bufferSize);
+        subscriptions.add(subscription);
+        for (String id : ids) {
+            subscribersById.computeIfAbsent(id, key -> ConcurrentHashMap.newKeySet()).add(subscription);
+        }
+        emitter.onCompletion(() -> unsubscribe(subscription));
+        emitter.onTimeout(() -> unsubscribe(subscription));
+        emitter.onError(error -> unsubscribe(subscription));
+
+        // Send what the client has not seen yet; the rest arrives as the reviews change
+        for (String id : ids) {
+            PollingStatus status = pollingService.getStatus(id);
+            if (status == null) {
+                status = pollingService.startPolling(id, useMockScenario);
+            }
+            synchronized (lastEvents) {
+                recordChange(status);
+                StatusEvent event = lastEvents.get(id);
+                if (event != null && event.id > lastEventId) {
+                    subscription.send(event);
+                }
+            }
+        }
+        log.atDebug().setMessage("Status stream opened")
+                .addKeyValue("reviews", ids.size())
+                .addKeyValue("lastEventId", lastEventId)
+                .log();
+        return emitter;
+    }
+
+    /**
+     * Registry listener: push the review's status to its streams if it changed.
+     * Events are queued under the lock that assigns their IDs, so every stream receives them in ID order
+     * and a client resuming from its Last-Event-ID never skips one; send() only enqueues, so this is cheap.
+     */
+    private void onStatus(PollingStatus status) {
+        synchronized (lastEvents) {
+            StatusEvent event = recordChange(status);
+            if (event == null) {
+                return;
+            }
+            Set<Subscription> subscribers = subscribersById.get(status.getId());
+            if (subscribers != null) {
+                for (Subscription subscription : subscribers) {
+                    subscription.send(event);
+                }
+            }
+        }
+    }
+
+    /**
+     * Record a review's status as its last event if the mapped status or completion changed
+     *
+     * @return The new event, or null if nothing changed (or there is no status yet)
+     */
+    private StatusEvent recordChange(PollingStatus status) {
+        if (status.getStatus() == null && !status.isCompleted()) {
+            return null;
+        }
+        synchronized (lastEvents) {
+            StatusEvent previous = lastEvents.get(status.getId());
+            if (previous != null && Objects.equals(previous.status, status.getStatus())
+                    && previous.completed == status.isCompleted()) {
+                return null;
+            }
+            StatusEvent event = new StatusEvent(nextEventId.incrementAndGet(), status);
+            lastEvents.put(status.getId(), event);
+            return event;
+        }
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        if (!subscriptions.remove(subscription)) {
+            return;
+        }
+        for (String id : subscription.ids) {
+            subscribersById.computeIfPresent(id, (key, subscribers) -> {
+                subscribers.remove(subscription);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+        }
+    }
+
+    private void sendHeartbeats() {
+        for (Subscription subscription : subscriptions) {
+            subscription.heartbeat();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        sender.shutdownNow();
+        for (Subscription subscription : subscriptions) {
+            subscription.emitter.complete();
+        }
+    }
+
+    /**
+     * A status change of one review
+     */
+    private static final class StatusEvent {
+        // Queued in place of an event to send a heartbeat comment
+        static final StatusEvent HEARTBEAT = new StatusEvent();
+
+        final long id;
+        final String status;
+        final boolean completed;
+        final Map<String, Object> data;
+
+        private StatusEvent() {
+            this.id = -1;
+            this.status = null;
+            this.completed = false;
+            this.data = Map.of();
+        }
+
+        StatusEvent(long id, PollingStatus status) {
+            this.id = id;
+            this.status = status.getStatus();
+            this.completed = status.isCompleted();
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("id", status.getId());
+            data.put("status", status.getStatus());
+            data.put("completed", status.isCompleted());
+            data.put("attempts", status.getAttempts());
+            data.put("error", status.getError());
+            this.data = data;
+        }
+    }
+
+    /**
+     * One open stream: events are queued by the caller and written to the client by one sender thread at a time
+     */
+    private final class Subscription {
+        final SseEmitter emitter;
+        final List<String> ids;
+        final BlockingQueue<StatusEvent> queue;
+
+        // Whether a drain is scheduled or running on the sender executor
+        final AtomicBoolean draining = new AtomicBoolean();
+        // Set when the client fell behind; the sender closes the emitter, as a send may be blocked holding it
+        volatile boolean closing;
+        // Only touched by the sender thread draining this stream
+        boolean closed;
+
+        Subscription(SseEmitter emitter, List<String> ids, int bufferSize) {
+            this.emitter = emitter;
+            this.ids = ids;
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        /**
+         * Queue an event without blocking; closes the stream if the client is a full buffer behind
+         */
+        void send(StatusEvent event) {
+            if (closing) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                log.warn("Closing status stream of {} reviews: client fell {} events behind", ids.size(),
+                        queue.size());
+                overflowed.increment();
+                closing = true;
+                unsubscribe(this);
+            }
+            scheduleDrain();
+        }
+
+        /**
+         * Queue a heartbeat, unless events are already waiting (they keep the connection alive as well)
+         */
+        void heartbeat() {
+            if (queue.isEmpty()) {
+                send(StatusEvent.HEARTBEAT);
+            }
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    sender.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // Shutting down
+                    draining.set(false);
+                }
+            }
+        }
+
+        /**
+         * Write the queued events to the client, on a sender thread
+         */
+        private void drain() {
+            try {
+                StatusEvent event;
+                while (!closing && (event = queue.poll()) != null) {
+                    if (!write(event)) {
+                        return;
+                    }
+                }
+                if (closing && !closed) {
+                    closed = true;
+                    queue.clear();
+                    emitter.complete();
+                }
+            } finally {
+                draining.set(false);
+            }
+            // Something was queued (or the stream marked for closing) after the loop looked
+            if (!queue.isEmpty() || closing && !closed) {
+                scheduleDrain();
+            }
+        }
+
+        private boolean write(StatusEvent event) {
+            try {
+                if (event == StatusEvent.HEARTBEAT) {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                } else {
+                    emitter.send(SseEmitter.event()
+                            .id(String.valueOf(event.id))
+                            .name("status")
+                            .data(event.data, MediaType.APPLICATION_JSON));
+                    eventsSent.increment();
+                }
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                // The client went away
+                closing = true;
+                closed = true;
+                queue.clear();
+                unsubscribe(this);
+                return false;
+            }
+        }
+    }
+}
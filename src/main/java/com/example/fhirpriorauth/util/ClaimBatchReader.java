@@ -0,0 +1,115 @@
+package com.example.fhirpriorauth.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the claims of a batch submission one at a time, either from an NDJSON stream
+ * (one FHIR Claim per line) or from a JSON array of Claims, without loading the whole body.
+ */
+public final class ClaimBatchReader {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ClaimBatchReader() {
+    }
+
+    /**
+     * Read one claim JSON per non-blank line
+     *
+     * @param input The NDJSON body
+     * @return An iterator over the claim JSON strings
+     */
+    public static Iterator<String> ndjson(InputStream input) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        return new Iterator<>() {
+            private String next;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    while (next == null) {
+                        String line = reader.readLine();
+                        if (line == null) {
+                            return false;
+                        }
+                        if (!line.isBlank()) {
+                            next = line;
+                        }
+                    }
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String line = next;
+                next = null;
+                return line;
+            }
+        };
+    }
+
+    /**
+     * Read the elements of a JSON array one at a time
+     *
+     * @param input A body holding a JSON array of claims
+     * @return An iterator over the claim JSON strings
+     */
+    public static Iterator<String> jsonArray(InputStream input) {
+        JsonParser parser;
+        try {
+            parser = new JsonFactory(objectMapper).createParser(input);
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of Claim resources");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return new Iterator<>() {
+            private JsonToken token;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    if (token == null) {
+                        token = parser.nextToken();
+                    }
+                    return token != null && token != JsonToken.END_ARRAY;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    token = null;
+                    return parser.readValueAsTree().toString();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+}
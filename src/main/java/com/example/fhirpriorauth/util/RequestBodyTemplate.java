@@ -0,0 +1,169 @@
+package com.example.fhirpriorauth.util;
+
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A JSON request body compiled once into static UTF-8 byte segments and named slots.
+ *
+ * Slots are written as {{name}} inside a JSON string in the template source, e.g. "fromDate": "{{fromDate}}".
+ * Rendering copies the pre-encoded segments and writes each slot value JSON-escaped straight into a
+ * per-thread scratch buffer, so no JSON tree is built and the static parts are never encoded again.
+ */
+public final class RequestBodyTemplate {
+
+    private static final String SLOT_START = "{{";
+    private static final String SLOT_END = "}}";
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    // Scratch buffer reused by renders on the same thread; grows to the largest body rendered
+    private static final ThreadLocal<byte[][]> scratch = ThreadLocal.withInitial(() -> new byte[][]{new byte[4096]});
+
+    // segments[i] is followed by slots[i]; the last segment has no slot after it
+    private final byte[][] segments;
+    private final String[] slots;
+
+    private RequestBodyTemplate(byte[][] segments, String[] slots) {
+        this.segments = segments;
+        this.slots = slots;
+    }
+
+    /**
+     * Compile a template from its source text
+     *
+     * @param source The template source
+     * @return The compiled template
+     */
+    public static RequestBodyTemplate compile(String source) {
+        List<byte[]> segments = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+
+        int position = 0;
+        int start;
+        while ((start = source.indexOf(SLOT_START, position)) >= 0) {
+            int end = source.indexOf(SLOT_END, start + SLOT_START.length());
+            if (end < 0) {
+                throw new IllegalArgumentException("Unterminated template slot at offset " + start);
+            }
+            segments.add(source.substring(position, start).getBytes(StandardCharsets.UTF_8));
+            slots.add(source.substring(start + SLOT_START.length(), end).trim());
+            position = end + SLOT_END.length();
+        }
+        segments.add(source.substring(position).getBytes(StandardCharsets.UTF_8));
+
+        return new RequestBodyTemplate(segments.toArray(new byte[0][]), slots.toArray(new String[0]));
+    }
+
+    /**
+     * Load and compile a template from the classpath
+     *
+     * @param location The classpath location, e.g. "availity-templates/service-review.json"
+     * @return The compiled template
+     */
+    public static RequestBodyTemplate fromClasspath(String location) {
+        try (InputStream input = new ClassPathResource(location).getInputStream()) {
+            return compile(new String(input.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load request body template " + location, e);
+        }
+    }
+
+    /**
+     * Get the names of the template's slots, in the order they appear
+     *
+     * @return The slot names
+     */
+    public List<String> getSlotNames() {
+        return Collections.unmodifiableList(Arrays.asList(slots));
+    }
+
+    /**
+     * Render the template
+     *
+     * @param values The slot values; a missing slot is rendered as an empty string
+     * @return The UTF-8 encoded body
+     */
+    public byte[] render(Map<String, String> values) {
+        byte[][] holder = scratch.get();
+        byte[] buffer = holder[0];
+        int length = 0;
+
+        for (int i = 0; i < segments.length; i++) {
+            byte[] segment = segments[i];
+            buffer = ensureCapacity(holder, buffer, length, segment.length);
+            System.arraycopy(segment, 0, buffer, length, segment.length);
+            length += segment.length;
+
+            if (i < slots.length) {
+                String value = values.get(slots[i]);
+                if (value != null) {
+                    // Worst case is six bytes per char (control characters are written as six-byte escapes)
+                    buffer = ensureCapacity(holder, buffer, length, value.length() * 6);
+                    length = writeEscaped(value, buffer, length);
+                }
+            }
+        }
+
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private static byte[] ensureCapacity(byte[][] holder, byte[] buffer, int length, int extra) {
+        if (length + extra <= buffer.length) {
+            return buffer;
+        }
+        byte[] grown = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        holder[0] = grown;
+        return grown;
+    }
+
+    /**
+     * Write a value as the contents of a JSON string, encoding it to UTF-8 as it goes
+     */
+    private static int writeEscaped(String value, byte[] buffer, int position) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer[position++] = '\\';
+                buffer[position++] = (byte) c;
+            } else if (c < 0x20) {
+                buffer[position++] = '\\';
+                buffer[position++] = 'u';
+                buffer[position++] = '0';
+                buffer[position++] = '0';
+                buffer[position++] = HEX[c >> 4];
+                buffer[position++] = HEX[c & 0xF];
+            } else if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate; write U+FFFD like String.getBytes does
+                buffer[position++] = (byte) 0xEF;
+                buffer[position++] = (byte) 0xBF;
+                buffer[position++] = (byte) 0xBD;
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return position;
+    }
+}
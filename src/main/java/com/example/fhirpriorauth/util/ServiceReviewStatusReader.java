@@ -0,0 +1,144 @@
+package com.example.fhirpriorauth.util;
+
+import com.example.fhirpriorauth.model.ServiceReviewStatus;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the status fields of an Availity service review response (statusCode, status, statusReasons and
+ * validationMessages) with a streaming parser, skipping everything else instead of building a JsonNode tree.
+ */
+public final class ServiceReviewStatusReader {
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private ServiceReviewStatusReader() {
+    }
+
+    /**
+     * Read the status fields from a response body stream
+     *
+     * @param body The UTF-8 JSON body; read up to the end of the top-level object, then closed by the parser
+     * @return The status fields; missing ones keep their defaults
+     */
+    public static ServiceReviewStatus read(InputStream body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            return read(parser);
+        }
+    }
+
+    /**
+     * Read the status fields from a response body
+     *
+     * @param body The UTF-8 JSON body
+     * @return The status fields; missing ones keep their defaults
+     */
+    public static ServiceReviewStatus read(byte[] body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            return read(parser);
+        }
+    }
+
+    private static ServiceReviewStatus read(JsonParser parser) throws IOException {
+        ServiceReviewStatus status = new ServiceReviewStatus();
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a JSON object in the service review response");
+        }
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "statusCode":
+                    status.setStatusCode(scalarText(parser, status.getStatusCode()));
+                    break;
+                case "status":
+                    status.setStatus(scalarText(parser, status.getStatus()));
+                    break;
+                case "statusReasons":
+                    if (value == JsonToken.START_ARRAY) {
+                        readStatusReasons(parser, status);
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "validationMessages":
+                    if (value == JsonToken.START_ARRAY) {
+                        readValidationMessages(parser, status);
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                default:
+                    // Not needed: skip the value, including any nested object or array
+                    parser.skipChildren();
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Read the array of {code, value} status reasons as "value (code)"
+     */
+    private static void readStatusReasons(JsonParser parser, ServiceReviewStatus status) throws IOException {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            String code = "";
+            String value = "";
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if ("code".equals(field)) {
+                    code = scalarText(parser, "");
+                } else if ("value".equals(field)) {
+                    value = scalarText(parser, "");
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            status.getStatusReasons().add(value + " (" + code + ")");
+        }
+    }
+
+    /**
+     * Read the validation messages, given either as strings or as objects with an errorMessage
+     */
+    private static void readValidationMessages(JsonParser parser, ServiceReviewStatus status) throws IOException {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                status.getValidationMessages().add(scalarText(parser, ""));
+                continue;
+            }
+            String message = "";
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if ("errorMessage".equals(field)) {
+                    message = scalarText(parser, "");
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            status.getValidationMessages().add(message);
+        }
+    }
+
+    /**
+     * Get the current value as text, like JsonNode.asText(), or the default for objects, arrays and null
+     */
+    private static String scalarText(JsonParser parser, String defaultValue) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return defaultValue;
+        }
+        return token == JsonToken.VALUE_NULL ? defaultValue : parser.getText();
+    }
+}
@@ -1,3 +1,24 @@
+// Simplify a mapped status code from the status stream for display
+function simpleStatusOf(status, error) {
+    switch (status) {
+        case '0': return 'Pending';
+        case '4': return 'Complete';
+        case 'A4': return 'Pended';
+        case '400': return 'Error';
+        case '504': return 'Timeout from health plan';
+        case 'TIMEOUT': return 'Timeout';
+        case null:
+        case undefined:
+            return error ? 'Error: ' + error : 'Pending';
+        default: return 'Unknown status: ' + status;
+    }
+}
+
+// Whether a simplified status is a final answer from the health plan
+function isFinalStatus(simpleStatus) {
+    return simpleStatus === 'Complete' || simpleStatus === 'Approved' || simpleStatus === 'Denied' || simpleStatus === 'Pended';
+}
+
 document.addEventListener('DOMContentLoaded', function () {
     const submitButton = document.getElementById('submitAndPoll');
     const stopButton = document.getElementById('stopPolling');
@@ -312,7 +333,6 @@ document.addEventListener('DOMContentLoaded', function () {
         }, 1000);
 
         let attempts = 0;
-        let pollTimer;
         let continuePolling = true;
 
         // Function to update progress
@@ -346,41 +366,18 @@ document.addEventListener('DOMContentLoaded', function () {
         // Stop polling button handler
         document.getElementById('stopPolling').addEventListener('click', function () {
             continuePolling = false;
+            if (events) {
+                events.close();
+            }
             this.disabled = true;
             completePolling(false, "Stopped");
         });
 
-        // Function to poll for status
-        function poll() {
-            if (!continuePolling || attempts >= maxAttempts) {
-                if (attempts >= maxAttempts) {
-                    completePolling(false, "Timeout");
-                }
-                return;
-            }
-
-            attempts++;
-            updateProgress(attempts, 'Polling...');
-
+        // Refresh the JSON viewer; the status response is cached per review, so this does not call Availity again
+        function showStatusResponse() {
             fetch(`/prior-auth/submit/${id}/status`)
                 .then(response => response.text())
                 .then(data => {
-                    // Extract status from response
-                    let status = 'Unknown';
-                    if (data.includes('Status:')) {
-                        status = data.split('Status:')[1].split('\n')[0].trim();
-                    }
-
-                    // Simplify status for display
-                    let simpleStatus = 'Pending';
-                    if (status.includes('Complete')) simpleStatus = 'Complete';
-                    else if (status.includes('Approved')) simpleStatus = 'Approved';
-                    else if (status.includes('Denied')) simpleStatus = 'Denied';
-                    else if (status.includes('Pended')) simpleStatus = 'Pended';
-                    else if (status.includes('Error')) simpleStatus = 'Error';
-
-                    updateProgress(attempts, simpleStatus);
-
                     // Update JSON viewer
                     try {
                         const jsonContent = document.getElementById('json-content');
@@ -408,30 +405,43 @@ document.addEventListener('DOMContentLoaded', function () {
                     } catch (e) {
                         console.error('Error updating JSON viewer:', e);
                     }
-
-                    // Check if complete
-                    if (data.includes('Complete') || data.includes('Approved') || data.includes('Denied') || data.includes('Pended')) {
-                        completePolling(true, simpleStatus);
-                    } else if (continuePolling && attempts < maxAttempts) {
-                        // Continue polling
-                        pollTimer = setTimeout(poll, pollInterval * 1000);
-                    } else {
-                        completePolling(false, "Timeout");
-                    }
                 })
                 .catch(error => {
-                    console.error('Error polling for status:', error);
-                    updateProgress(attempts, 'Error');
-
-                    // Continue polling despite error
-                    if (continuePolling && attempts < maxAttempts) {
-                        pollTimer = setTimeout(poll, pollInterval * 1000);
-                    } else {
-                        completePolling(false, "Error: " + error.message);
-                    }
+                    console.error('Error fetching status response:', error);
                 });
         }
 
+        // The server polls Availity and pushes an event when the status changes, so any number of open pages
+        // cost one upstream poll per review
+        let events;
+        function listen() {
+            events = new EventSource(`/prior-auth/polling/stream?ids=${encodeURIComponent(id)}&mock=true`);
+            events.addEventListener('status', function (event) {
+                if (!continuePolling) {
+                    return;
+                }
+                const update = JSON.parse(event.data);
+                attempts = update.attempts;
+                const simpleStatus = simpleStatusOf(update.status, update.error);
+                updateProgress(attempts, simpleStatus);
+                if (update.status) {
+                    showStatusResponse();
+                }
+                if (update.completed) {
+                    events.close();
+                    completePolling(isFinalStatus(simpleStatus), simpleStatus);
+                } else if (attempts >= maxAttempts) {
+                    // Stop watching; the server keeps polling up to its own limit
+                    events.close();
+                    completePolling(false, "Timeout");
+                }
+            });
+            events.onerror = function () {
+                // EventSource reconnects by itself, sending Last-Event-ID to resume where it left off
+                console.warn('Status stream interrupted, reconnecting');
+            };
+        }
+
         // Check if the prior auth is already completed
         fetch(`/prior-auth/polling/${id}`)
             .then(response => response.json())
@@ -444,13 +454,13 @@ document.addEventListener('DOMContentLoaded', function () {
                     completePolling(true, data.statusDescription || 'Completed');
                 } else {
                     // Start polling
-                    poll();
+                    listen();
                 }
             })
             .catch(error => {
                 console.error('Error checking prior auth status:', error);
-                // Start polling anyway
-                poll();
+                // Start listening anyway
+                listen();
             });
     }
 
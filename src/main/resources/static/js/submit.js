@@ -254,7 +254,45 @@ async function convertToFhir(availityJson) {
     }
 }
 
+// Function to create an idempotency key: a random (version 4) UUID.
+// crypto.randomUUID only exists in secure contexts (HTTPS or localhost), so build one from getRandomValues elsewhere
+function newIdempotencyKey() {
+    if (typeof crypto.randomUUID === 'function') {
+        return crypto.randomUUID();
+    }
+    const bytes = crypto.getRandomValues(new Uint8Array(16));
+    bytes[6] = (bytes[6] & 0x0f) | 0x40; // version 4
+    bytes[8] = (bytes[8] & 0x3f) | 0x80; // RFC 4122 variant
+    const hex = Array.from(bytes, b => b.toString(16).padStart(2, '0')).join('');
+    return `${hex.slice(0, 8)}-${hex.slice(8, 12)}-${hex.slice(12, 16)}-${hex.slice(16, 20)}-${hex.slice(20)}`;
+}
+
 // Function to load cached data
+/**
+ * Simplify a mapped status code from the status stream for display
+ */
+function simpleStatusOf(status, error) {
+    switch (status) {
+        case '0': return 'Pending';
+        case '4': return 'Complete';
+        case 'A4': return 'Pended';
+        case '400': return 'Error';
+        case '504': return 'Timeout from health plan';
+        case 'TIMEOUT': return 'Timeout';
+        case null:
+        case undefined:
+            return error ? 'Error: ' + error : 'Pending';
+        default: return 'Unknown status: ' + status;
+    }
+}
+
+/**
+ * Whether a simplified status is a final answer from the health plan
+ */
+function isFinalStatus(simpleStatus) {
+    return simpleStatus === 'Complete' || simpleStatus === 'Approved' || simpleStatus === 'Denied' || simpleStatus === 'Pended';
+}
+
 function loadCachedData() {
     try {
         const cachedData = localStorage.getItem('priorAuthResponse');
@@ -493,8 +531,9 @@ document.addEventListener('DOMContentLoaded', function () {
         // Clear cached data when submitting a new request
         clearCachedData();
 
-        // Submit the prior auth request
-        fetch('/prior-auth/submit', { method: 'POST' })
+        // Submit the prior auth request; a new key per click, so only retries of this click are deduplicated
+        const idempotencyKey = newIdempotencyKey();
+        fetch('/prior-auth/submit', { method: 'POST', headers: { 'Idempotency-Key': idempotencyKey } })
             .then(response => response.text())
             .then(data => {
                 // Hide loading indicator
@@ -607,10 +646,8 @@ document.addEventListener('DOMContentLoaded', function () {
 
     function startPolling(id) {
         console.log('Starting polling for ID:', id);
-        const maxAttempts = 10;
-        const pollInterval = 2000; // 2 seconds
+        const maxAttempts = 20; // availity.polling.max-attempts on the server
         let attempts = 0;
-        let pollTimer;
         let elapsedSeconds = 0;
 
         // Start timer
@@ -659,36 +696,11 @@ document.addEventListener('DOMContentLoaded', function () {
             updateProgress(attempts, status);
         }
 
-        // Function to poll for status
-        function poll() {
-            if (attempts >= maxAttempts) {
-                clearTimeout(pollTimer);
-                completePolling(false, "Timeout");
-                return;
-            }
-
-            attempts++;            
-            updateProgress(attempts, 'Polling...');
-
+        // Refresh the JSON viewer; the status response is cached per review, so this does not call Availity again
+        function showStatusResponse(simpleStatus) {
             fetch(`/prior-auth/submit/${id}/status`)
                 .then(response => response.text())
                 .then(data => {
-                    // Extract status from response
-                    let status = 'Unknown';
-                    if (data.includes('Status:')) {
-                        status = data.split('Status:')[1].split('\n')[0].trim();
-                    }
-
-                    // Simplify status for display
-                    let simpleStatus = 'Pending';
-                    if (status.includes('Complete')) simpleStatus = 'Complete';
-                    else if (status.includes('Approved')) simpleStatus = 'Approved';
-                    else if (status.includes('Denied')) simpleStatus = 'Denied';
-                    else if (status.includes('Pended')) simpleStatus = 'Pended';
-                    else if (status.includes('Error')) simpleStatus = 'Error';
-
-                    updateProgress(attempts, simpleStatus);
-
                     // Update JSON viewer
                     try {
                         const jsonContent = document.getElementById('json-content');
@@ -713,7 +725,7 @@ document.addEventListener('DOMContentLoaded', function () {
                                         attempts: attempts,
                                         time: elapsedSeconds || 0,
                                         status: simpleStatus,
-                                        success: simpleStatus === 'Complete' || simpleStatus === 'Approved' || simpleStatus === 'Denied' || simpleStatus === 'Pended'
+                                        success: isFinalStatus(simpleStatus)
                                     };
                                     saveCachedData(id, formattedJson, document.getElementById('fhir-content')?.textContent, pollingStatus);
 
@@ -743,27 +755,32 @@ document.addEventListener('DOMContentLoaded', function () {
                     } catch (e) {
                         console.error('Error updating JSON viewer:', e);
                     }
-
-                    // Check if complete
-                    if (data.includes('Complete') || data.includes('Approved') || data.includes('Denied') || data.includes('Pended')) {
-                        clearTimeout(pollTimer);
-                        completePolling(true, simpleStatus);
-                    } else {
-                        // Continue polling
-                        pollTimer = setTimeout(poll, pollInterval);
-                    }
                 })
                 .catch(error => {
-                    console.error('Error polling for status:', error);
-                    updateProgress(attempts, 'Error');
-
-                    // Continue polling despite error
-                    pollTimer = setTimeout(poll, pollInterval);
+                    console.error('Error fetching status response:', error);
                 });
         }
 
-        // Start polling
-        poll();
+        // The server polls Availity and pushes an event when the status changes, so any number of open pages
+        // cost one upstream poll per review
+        const events = new EventSource(`/prior-auth/polling/stream?ids=${encodeURIComponent(id)}&mock=true`);
+        events.addEventListener('status', function (event) {
+            const update = JSON.parse(event.data);
+            attempts = update.attempts;
+            const simpleStatus = simpleStatusOf(update.status, update.error);
+            updateProgress(attempts, simpleStatus);
+            if (update.status) {
+                showStatusResponse(simpleStatus);
+            }
+            if (update.completed) {
+                events.close();
+                completePolling(isFinalStatus(simpleStatus), simpleStatus);
+            }
+        });
+        events.onerror = function () {
+            // EventSource reconnects by itself, sending Last-Event-ID to resume where it left off
+            console.warn('Status stream interrupted, reconnecting');
+        };
     }
 
 
@@ -0,0 +1,151 @@
+package com.example.fhirpriorauth.auth;
+
+import com.example.fhirpriorauth.config.HttpClientMetrics;
+import com.example.fhirpriorauth.resilience.ResilienceProperties;
+import com.example.fhirpriorauth.resilience.UpstreamGuards;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TokenServiceTest {
+
+    private HttpServer server;
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    private TokenService tokenService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/token", exchange -> {
+            int n = tokenRequests.incrementAndGet();
+            try {
+                // Keep the request open long enough for every caller to pile up behind it
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = ("{\"access_token\":\"test-token-" + n + "-abcdefghij\",\"expires_in\":300}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        AvailityAccounts accounts = new AvailityAccounts("client", "secret", "hipaa", new AvailityAccountProperties());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        tokenService = new TokenService(HttpClient.newHttpClient(), new HttpClientMetrics(meterRegistry), accounts, meterRegistry,
+                new UpstreamGuards(new ResilienceProperties(), meterRegistry));
+        ReflectionTestUtils.setField(tokenService, "tokenUrl",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/token");
+        ReflectionTestUtils.setField(tokenService, "maxPoolSize", 32);
+        ReflectionTestUtils.setField(tokenService, "requestTimeoutMillis", 5000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void concurrentCallersShareSingleTokenRequest() throws Exception {
+        int threads = 32;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+
+        for (int i = 0; i < threads; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                return tokenService.fetchAccessToken();
+            }));
+        }
+        start.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("test-token-1-abcdefghij", result.get(10, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+
+        assertEquals(1, tokenRequests.get());
+
+        // Later callers are served from the cache
+        assertEquals("test-token-1-abcdefghij", tokenService.fetchAccessToken());
+        assertEquals(1, tokenRequests.get());
+    }
+
+    @Test
+    void tokensAreCachedPerCredentialWithLruEviction() {
+        ReflectionTestUtils.setField(tokenService, "maxPoolSize", 2);
+        AvailityCredentials first = new AvailityCredentials("client-a", "secret", "hipaa");
+        AvailityCredentials second = new AvailityCredentials("client-b", "secret", "hipaa");
+        AvailityCredentials third = new AvailityCredentials("client-c", "secret", "hipaa");
+
+        assertEquals("test-token-1-abcdefghij", tokenService.fetchAccessToken(first));
+        assertEquals("test-token-2-abcdefghij", tokenService.fetchAccessToken(second));
+        assertEquals("test-token-1-abcdefghij", tokenService.fetchAccessToken(first));
+        assertEquals(2, tokenRequests.get());
+
+        // Adding a third credential evicts the least recently used one (second)
+        assertEquals("test-token-3-abcdefghij", tokenService.fetchAccessToken(third));
+        assertEquals("test-token-1-abcdefghij", tokenService.fetchAccessToken(first));
+        assertEquals("test-token-4-abcdefghij", tokenService.fetchAccessToken(second));
+        assertEquals(4, tokenRequests.get());
+    }
+
+    @Test
+    void invalidateOnlyDropsTheRejectedToken() {
+        AvailityCredentials credentials = new AvailityCredentials("client", "secret", "hipaa");
+        assertEquals("test-token-1-abcdefghij", tokenService.fetchAccessToken(credentials));
+
+        tokenService.invalidate(credentials, "some-other-token");
+        assertEquals("test-token-1-abcdefghij", tokenService.fetchAccessToken(credentials));
+
+        tokenService.invalidate(credentials, "test-token-1-abcdefghij");
+        assertEquals("test-token-2-abcdefghij", tokenService.fetchAccessToken(credentials));
+
+        // A late 401 for the old token must not throw away the replacement
+        tokenService.invalidate(credentials, "test-token-1-abcdefghij");
+        assertEquals("test-token-2-abcdefghij", tokenService.fetchAccessToken(credentials));
+        assertEquals(2, tokenRequests.get());
+    }
+
+    @Test
+    void refreshAheadRenewsTokenInBackground() throws Exception {
+        ReflectionTestUtils.setField(tokenService, "refreshAheadEnabled", true);
+        ReflectionTestUtils.setField(tokenService, "refreshAheadFraction", 0.001);
+        ReflectionTestUtils.setField(tokenService, "refreshAheadJitter", 0.0);
+
+        assertEquals("test-token-1-abcdefghij", tokenService.fetchAccessToken());
+
+        // Only the refresh already scheduled should run
+        ReflectionTestUtils.setField(tokenService, "refreshAheadEnabled", false);
+
+        // The old token keeps being served until the background refresh lands
+        String token = tokenService.fetchAccessToken();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (token.equals("test-token-1-abcdefghij") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            token = tokenService.fetchAccessToken();
+        }
+
+        assertEquals("test-token-2-abcdefghij", token);
+        assertEquals(2, tokenRequests.get());
+        tokenService.shutdown();
+    }
+}
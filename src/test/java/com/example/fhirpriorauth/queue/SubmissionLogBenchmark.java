@@ -0,0 +1,109 @@
+package com.example.fhirpriorauth.queue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Throughput of the submission log: durable enqueues from concurrent request threads (how well group commit
+ * shares each fsync), and acknowledgements with periodic checkpoints and compaction.
+ *
+ * Run the main method from the IDE, or after mvn test-compile with the test classpath on the java command line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubmissionLogBenchmark {
+
+    // Checkpoint (and so compact) every this many acknowledgements, keeping disk use bounded
+    private static final int CHECKPOINT_EVERY = 8192;
+
+    @Param({"0", "1"})
+    public long commitLingerMillis;
+
+    @Param({"1024"})
+    public int payloadBytes;
+
+    private Path directory;
+    private SubmissionLog submissionLog;
+    private byte[] payload;
+    private final AtomicLong acknowledged = new AtomicLong();
+    private final AtomicLong nextAck = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("submission-log-bench");
+        submissionLog = new SubmissionLog(directory, 64 * 1024 * 1024, commitLingerMillis, new SimpleMeterRegistry());
+        payload = new byte[payloadBytes];
+        Arrays.fill(payload, (byte) 'x');
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        submissionLog.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * Append a submission and wait until it is durable, as the submit endpoints do before answering
+     */
+    @Benchmark
+    @Threads(8)
+    public long enqueue() throws IOException {
+        long sequence = submissionLog.append(payload).join();
+        acknowledge(sequence);
+        return sequence;
+    }
+
+    /**
+     * Acknowledge submissions in pairs, out of order, as concurrent workers finish them
+     */
+    @Benchmark
+    @Threads(1)
+    public void acknowledgeOutOfOrder() throws IOException {
+        long sequence = nextAck.incrementAndGet();
+        acknowledge(sequence % 2 == 1 ? sequence + 1 : sequence - 1);
+    }
+
+    private void acknowledge(long sequence) throws IOException {
+        submissionLog.acknowledge(sequence);
+        if (acknowledged.incrementAndGet() % CHECKPOINT_EVERY == 0) {
+            submissionLog.checkpoint();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(SubmissionLogBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.fhirpriorauth.queue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SubmissionLogTest {
+
+    @TempDir
+    Path directory;
+
+    private SubmissionLog open(int segmentBytes) {
+        return new SubmissionLog(directory, segmentBytes, 1, new SimpleMeterRegistry());
+    }
+
+    private static Map<Long, String> replay(SubmissionLog submissionLog) {
+        Map<Long, String> records = new LinkedHashMap<>();
+        submissionLog.replay((sequence, payload) -> records.put(sequence, new String(payload, StandardCharsets.UTF_8)));
+        return records;
+    }
+
+    private static void append(SubmissionLog submissionLog, String... payloads) {
+        for (String payload : payloads) {
+            submissionLog.append(payload.getBytes(StandardCharsets.UTF_8)).join();
+        }
+    }
+
+    @Test
+    void reopenedLogReplaysAppendedRecords() throws Exception {
+        SubmissionLog submissionLog = open(4096);
+        append(submissionLog, "one", "two", "three");
+        submissionLog.close();
+
+        SubmissionLog reopened = open(4096);
+        assertEquals(Map.of(1L, "one", 2L, "two", 3L, "three"), replay(reopened));
+        assertEquals(List.of(1L, 2L, 3L), List.copyOf(replay(reopened).keySet()));
+
+        // New records continue the sequence
+        assertEquals(4L, reopened.append("four".getBytes(StandardCharsets.UTF_8)).join());
+        reopened.close();
+    }
+
+    @Test
+    void tornTailIsZeroedOnRecovery() throws Exception {
+        SubmissionLog submissionLog = open(4096);
+        append(submissionLog, "one", "two");
+        submissionLog.close();
+
+        // A record whose length made it to disk but whose payload did not
+        Path segment = directory.resolve(String.format("%020d.seg", 1));
+        int tornOffset = 2 * (16 + 3);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(24).putInt(50).putInt(12345).putLong(3).putLong(-1L);
+            channel.write(torn.flip(), tornOffset);
+        }
+
+        SubmissionLog reopened = open(4096);
+        assertEquals(Map.of(1L, "one", 2L, "two"), replay(reopened));
+        byte[] tail = Files.readAllBytes(segment);
+        for (int i = tornOffset; i < tornOffset + 24; i++) {
+            assertEquals(0, tail[i], "byte " + i + " of the torn record");
+        }
+
+        append(reopened, "three");
+        reopened.close();
+
+        SubmissionLog again = open(4096);
+        assertEquals(Map.of(1L, "one", 2L, "two", 3L, "three"), replay(again));
+        again.close();
+    }
+
+    @Test
+    void outOfOrderAcknowledgementsSurviveCheckpoint() throws Exception {
+        SubmissionLog submissionLog = open(4096);
+        append(submissionLog, "one", "two", "three", "four", "five");
+        submissionLog.acknowledge(4);
+        submissionLog.acknowledge(2);
+        submissionLog.checkpoint();
+        submissionLog.close();
+
+        SubmissionLog reopened = open(4096);
+        assertEquals(Map.of(1L, "one", 3L, "three", 5L, "five"), replay(reopened));
+        assertEquals(3, reopened.getUnacknowledgedCount());
+
+        // Acknowledging the gap moves the low-water mark past the records acknowledged earlier
+        reopened.acknowledge(1);
+        reopened.acknowledge(3);
+        reopened.checkpoint();
+        reopened.close();
+
+        SubmissionLog again = open(4096);
+        assertEquals(Map.of(5L, "five"), replay(again));
+        again.close();
+    }
+
+    @Test
+    void checkpointDeletesOnlyFullyAcknowledgedSegments() throws IOException {
+        // Three 60-byte records per 256-byte segment: segments start at 1, 4 and 7
+        SubmissionLog submissionLog = open(256);
+        for (int i = 0; i < 9; i++) {
+            submissionLog.append(new byte[60]).join();
+        }
+        assertEquals(3, submissionLog.getSegmentCount());
+
+        for (long sequence = 1; sequence <= 5; sequence++) {
+            submissionLog.acknowledge(sequence);
+        }
+        submissionLog.checkpoint();
+        assertEquals(2, submissionLog.getSegmentCount());
+        assertFalse(Files.exists(directory.resolve(String.format("%020d.seg", 1))));
+        assertTrue(Files.exists(directory.resolve(String.format("%020d.seg", 4))));
+
+        // Acknowledged above the low-water mark is not enough: 6 is still outstanding
+        submissionLog.acknowledge(7);
+        submissionLog.acknowledge(8);
+        submissionLog.acknowledge(9);
+        submissionLog.checkpoint();
+        assertEquals(2, submissionLog.getSegmentCount());
+
+        submissionLog.acknowledge(6);
+        submissionLog.checkpoint();
+        assertFalse(Files.exists(directory.resolve(String.format("%020d.seg", 4))));
+        // The active segment is kept even when all of it is acknowledged
+        assertEquals(1, submissionLog.getSegmentCount());
+        submissionLog.close();
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.fhirpriorauth.queue;
+
+import com.example.fhirpriorauth.model.QueuedSubmission;
+import com.example.fhirpriorauth.service.AvailityServiceReviewService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SubmissionQueueTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    private SubmissionQueue newQueue(AvailityServiceReviewService serviceReviewService, SimpleMeterRegistry meterRegistry) {
+        SubmissionQueue queue = new SubmissionQueue(serviceReviewService, meterRegistry);
+        ReflectionTestUtils.setField(queue, "directory", directory.toString());
+        ReflectionTestUtils.setField(queue, "segmentBytes", 65536);
+        ReflectionTestUtils.setField(queue, "commitLingerMillis", 1L);
+        ReflectionTestUtils.setField(queue, "maxInFlight", 4);
+        ReflectionTestUtils.setField(queue, "checkpointIntervalMillis", 1000L);
+        ReflectionTestUtils.setField(queue, "redeliveryDelayMillis", 100L);
+        ReflectionTestUtils.setField(queue, "maxRedeliveryDelayMillis", 1000L);
+        ReflectionTestUtils.setField(queue, "maxDeliveries", 3);
+        ReflectionTestUtils.setField(queue, "maxRedeliveryAgeMillis", 60000L);
+        return queue;
+    }
+
+    @Test
+    void replaySkipsSubmissionsWithLoggedOutcome() throws Exception {
+        Map<String, Object> accepted = Map.of("payerId", "ACCEPTED");
+        Map<String, Object> pending = Map.of("payerId", "PENDING");
+
+        // A previous run logged two submissions and the outcome of the first, then stopped before a checkpoint
+        SubmissionLog previousRun = new SubmissionLog(directory, 65536, 1, new SimpleMeterRegistry());
+        previousRun.append(objectMapper.writeValueAsBytes(QueuedSubmission.forPayload("REQ-1", accepted, "key-1"))).join();
+        previousRun.append(objectMapper.writeValueAsBytes(QueuedSubmission.forPayload("REQ-2", pending, "key-2"))).join();
+        previousRun.append(objectMapper.writeValueAsBytes(QueuedSubmission.forOutcome(1, "SR-1"))).join();
+        previousRun.close();
+
+        AvailityServiceReviewService serviceReviewService = mock(AvailityServiceReviewService.class);
+        when(serviceReviewService.submitServiceReviewAsync(any(Map.class), any(String.class), any(IntConsumer.class)))
+                .thenReturn(CompletableFuture.completedFuture("SR-2"));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SubmissionQueue queue = newQueue(serviceReviewService, meterRegistry);
+
+        queue.start();
+        verify(serviceReviewService, timeout(5000))
+                .submitServiceReviewAsync(eq(pending), eq("key-2"), any(IntConsumer.class));
+        queue.stop();
+
+        verify(serviceReviewService, never()).submitServiceReviewAsync(eq(accepted), any(String.class),
+                any(IntConsumer.class));
+        assertEquals(1.0, meterRegistry.counter("availity.queue.replayed").count());
+
+        // Everything was acknowledged, including the outcome logged for the replayed submission
+        SubmissionLog nextRun = new SubmissionLog(directory, 65536, 1, new SimpleMeterRegistry());
+        List<Long> remaining = new ArrayList<>();
+        nextRun.replay((sequence, payload) -> remaining.add(sequence));
+        nextRun.close();
+        assertEquals(List.of(), remaining);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.fhirpriorauth.util;
+
+import com.example.fhirpriorauth.model.ServiceReviewStatus;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares reading the status fields of a service review response with the streaming ServiceReviewStatusReader
+ * against the previous path: decode the body to a String, build a JsonNode tree, then read four fields.
+ *
+ * The response is the mock service review with the status fields appended after it, so both paths have to get
+ * through the whole review. Run the main method from the IDE, or after mvn test-compile with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(java.util.concurrent.TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceReviewStatusReaderBenchmark {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private byte[] responseBody;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectNode response;
+        try (InputStream input = new ClassPathResource("static/mock-data/mock-service-review.json").getInputStream()) {
+            response = (ObjectNode) objectMapper.readTree(input);
+        }
+        response.put("statusCode", "A4");
+        response.put("status", "Pended");
+        response.putArray("statusReasons").addObject().put("code", "A4").put("value", "Pended for review");
+        response.putArray("validationMessages").addObject().put("field", "serviceReview").put("errorMessage", "Check dates");
+        responseBody = objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public ServiceReviewStatus streaming() throws IOException {
+        return ServiceReviewStatusReader.read(new ByteArrayInputStream(responseBody));
+    }
+
+    @Benchmark
+    public ServiceReviewStatus tree() throws IOException {
+        JsonNode jsonNode = objectMapper.readTree(new String(responseBody, StandardCharsets.UTF_8));
+        ServiceReviewStatus status = new ServiceReviewStatus();
+        status.setStatusCode(jsonNode.has("statusCode") ? jsonNode.get("statusCode").asText() : "unknown");
+        status.setStatus(jsonNode.has("status") ? jsonNode.get("status").asText() : "Unknown");
+        if (jsonNode.has("statusReasons") && jsonNode.get("statusReasons").isArray()) {
+            for (JsonNode reason : jsonNode.get("statusReasons")) {
+                status.getStatusReasons().add(reason.path("value").asText() + " (" + reason.path("code").asText() + ")");
+            }
+        }
+        if (jsonNode.has("validationMessages") && jsonNode.get("validationMessages").isArray()) {
+            for (JsonNode message : jsonNode.get("validationMessages")) {
+                status.getValidationMessages().add(message.path("errorMessage").asText());
+            }
+        }
+        return status;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(ServiceReviewStatusReaderBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}